@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2002-2023 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.manorrock.mammoth.Mammoth;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Measures the heap allocation per extracted entry of a conversion.
+ *
+ * <p>
+ * Usage: <code>java -cp target/classes bench/AllocationBenchmark.java
+ * [mammoth arguments]</code>
+ * </p>
+ *
+ * <p>
+ * A fixture TCK is converted twice, once with a WAR and shared jars of
+ * <code>SMALL</code> entries and once with <code>LARGE</code> entries. The
+ * difference in allocated bytes divided by the difference in entries is the
+ * steady state allocation per entry, without the fixed cost of a run.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public class AllocationBenchmark {
+
+    /**
+     * Stores the number of entries of the small fixture.
+     */
+    private static final int SMALL = 2000;
+
+    /**
+     * Stores the number of entries of the large fixture.
+     */
+    private static final int LARGE = 10000;
+
+    /**
+     * Stores the common sources the conversion expects.
+     */
+    private static final String[] COMMON_SOURCES = {
+        "com/sun/ts/tests/servlet/common/util/Data.java",
+        "com/sun/ts/tests/servlet/common/util/StaticLog.java",
+        "com/sun/ts/tests/common/webclient/BaseUrlClient.java",
+        "com/sun/ts/lib/harness/EETest.java",
+        "com/sun/ts/tests/common/webclient/http/HttpRequest.java",
+        "com/sun/ts/tests/common/webclient/Util.java",
+        "com/sun/ts/tests/common/webclient/http/HttpResponse.java",
+        "com/sun/ts/tests/common/webclient/http/MethodFactory.java",
+        "com/sun/ts/tests/common/webclient/WebTestCase.java",
+        "com/sun/ts/tests/common/webclient/TestCase.java",
+        "com/sun/ts/tests/common/webclient/TestFailureException.java",
+        "com/sun/ts/tests/common/webclient/validation/ValidationFactory.java",
+        "com/sun/ts/tests/common/webclient/validation/ValidationStrategy.java",
+        "com/sun/ts/lib/harness/ServiceEETest.java"
+    };
+
+    /**
+     * Main method.
+     *
+     * @param arguments the extra Mammoth arguments.
+     * @throws Exception when a serious error occurs.
+     */
+    public static void main(String[] arguments) throws Exception {
+        run(SMALL, arguments);
+        long small = run(SMALL, arguments);
+        long large = run(LARGE, arguments);
+        long entries = 4L * (LARGE - SMALL);
+        System.out.printf("Allocated per entry: %d bytes%n", (large - small) / entries);
+    }
+
+    /**
+     * Convert a fixture with the given number of entries per archive.
+     *
+     * @param entries the number of entries.
+     * @param arguments the extra Mammoth arguments.
+     * @return the number of bytes allocated by the conversion.
+     * @throws IOException when an I/O error occurs.
+     */
+    private static long run(int entries, String[] arguments) throws IOException {
+        Path directory = Files.createTempDirectory("mammoth");
+        try {
+            File zipFile = directory.resolve("fixture.zip").toFile();
+            createFixture(zipFile, entries);
+            String[] mammothArguments = new String[arguments.length + 10];
+            mammothArguments[0] = "--tckUrl";
+            mammothArguments[1] = zipFile.toURI().toString();
+            mammothArguments[2] = "--tckZipFile";
+            mammothArguments[3] = directory.resolve("tck.zip").toString();
+            mammothArguments[4] = "--tckDir";
+            mammothArguments[5] = directory.resolve("tck").toString();
+            mammothArguments[6] = "--webAppsDir";
+            mammothArguments[7] = directory.resolve("webapps").toString();
+            mammothArguments[8] = "--mavenDir";
+            mammothArguments[9] = directory.resolve("maven").toString();
+            System.arraycopy(arguments, 0, mammothArguments, 10, arguments.length);
+            com.sun.management.ThreadMXBean threadBean
+                    = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long before = threadBean.getCurrentThreadAllocatedBytes();
+            Mammoth.main(mammothArguments);
+            return threadBean.getCurrentThreadAllocatedBytes() - before;
+        } finally {
+            try ( Stream<Path> walk = Files.walk(directory)) {
+                walk.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    /**
+     * Create the fixture TCK zip file.
+     *
+     * @param zipFile the zip file.
+     * @param entries the number of entries of the WAR and each shared jar.
+     * @throws IOException when an I/O error occurs.
+     */
+    private static void createFixture(File zipFile, int entries) throws IOException {
+        try ( ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            addDirectory(output, "tck/");
+            addDirectory(output, "tck/lib/");
+            addDirectory(output, "tck/src/");
+            for (String source : COMMON_SOURCES) {
+                String path = "tck/src/";
+                for (String part : source.substring(0, source.lastIndexOf('/') + 1).split("/")) {
+                    path += part + "/";
+                    addDirectory(output, path);
+                }
+                addFile(output, "tck/src/" + source, "class Source { }".getBytes(StandardCharsets.UTF_8));
+            }
+            for (String library : new String[]{"javatest", "tsharness", "servlettck"}) {
+                addFile(output, "tck/lib/" + library + ".jar", createArchive("resources/", entries));
+            }
+            addDirectory(output, "tck/dist/");
+            addFile(output, "tck/dist/fixture_web.war", createArchive("", entries));
+        }
+    }
+
+    /**
+     * Create an archive with the given number of resource entries.
+     *
+     * @param prefix the prefix of the entry names.
+     * @param entries the number of entries.
+     * @return the archive.
+     * @throws IOException when an I/O error occurs.
+     */
+    private static byte[] createArchive(String prefix, int entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try ( ZipOutputStream output = new ZipOutputStream(bytes)) {
+            byte[] content = new byte[4096];
+            for (int i = 0; i < entries; i++) {
+                addFile(output, prefix + "resource" + i + ".html", content);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Add a directory entry.
+     *
+     * @param output the zip output stream.
+     * @param name the entry name.
+     * @throws IOException when an I/O error occurs.
+     */
+    private static void addDirectory(ZipOutputStream output, String name) throws IOException {
+        try {
+            output.putNextEntry(new ZipEntry(name));
+            output.closeEntry();
+        } catch (ZipException ze) {
+            // duplicate directory entry.
+        }
+    }
+
+    /**
+     * Add a file entry.
+     *
+     * @param output the zip output stream.
+     * @param name the entry name.
+     * @param content the content.
+     * @throws IOException when an I/O error occurs.
+     */
+    private static void addFile(ZipOutputStream output, String name, byte[] content) throws IOException {
+        output.putNextEntry(new ZipEntry(name));
+        output.write(content);
+        output.closeEntry();
+    }
+}
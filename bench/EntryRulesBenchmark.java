@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2002-2023 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.manorrock.mammoth.EntryRules;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares the entry classification rules with the string checks they
+ * replaced.
+ *
+ * <p>
+ * Usage: <code>java -cp target/classes bench/EntryRulesBenchmark.java</code>
+ * </p>
+ *
+ * <p>
+ * Both variants classify the same realistic WAR entry names for the three
+ * targets. The legacy variant does what the WAR loops used to do, building
+ * the output path for every entry and lower casing it. The time and the
+ * allocated bytes per entry are reported after a warm up.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public class EntryRulesBenchmark {
+
+    /**
+     * Stores the number of measured rounds.
+     */
+    private static final int ROUNDS = 20000;
+
+    /**
+     * Stores the entry names.
+     */
+    private static final String[] NAMES = {
+        "META-INF/MANIFEST.MF",
+        "WEB-INF/web.xml",
+        "WEB-INF/classes/com/sun/ts/tests/servlet/api/jakarta_servlet/genericservlet/URLClient.class",
+        "WEB-INF/classes/com/sun/ts/tests/servlet/api/jakarta_servlet/genericservlet/DestroyTestServlet.class",
+        "WEB-INF/classes/com/sun/ts/tests/servlet/api/jakarta_servlet/genericservlet/InitTestServlet.class",
+        "WEB-INF/classes/com/sun/ts/tests/servlet/api/jakarta_servlet/genericservlet/ServiceTestServlet.class",
+        "WEB-INF/classes/com/sun/ts/tests/servlet/common/servlets/GenericTCKServlet.class",
+        "WEB-INF/classes/com/sun/ts/tests/servlet/common/servlets/GenericTCKServlet$1.class",
+        "WEB-INF/classes/com/sun/ts/tests/servlet/common/util/Data.class",
+        "WEB-INF/classes/com/sun/ts/tests/servlet/common/util/ServletTestUtil.class",
+        "WEB-INF/classes/com/sun/ts/tests/servlet/common/util/ServletTestUtil$Holder.class",
+        "WEB-INF/classes/com/sun/ts/tests/common/webclient/WebTestCase.class",
+        "WEB-INF/lib/commons-httpclient.jar",
+        "index.html",
+        "images/logo.GIF",
+        "WEB-INF/classes/com/sun/ts/tests/servlet/api/jakarta_servlet/genericservlet/Sample.CLASS"
+    };
+
+    /**
+     * Stores the output directory the legacy checks prefix the names with.
+     */
+    private static final File OUTPUT_DIRECTORY = new File(
+            "/home/user/tck/maven/servlet_api_jakarta_servlet_genericservlet_web/src/main/java");
+
+    /**
+     * Stores a sink to keep the results alive.
+     */
+    private static int sink;
+
+    /**
+     * Main method.
+     *
+     * @param arguments the arguments.
+     * @throws Exception when a serious error occurs.
+     */
+    public static void main(String[] arguments) throws Exception {
+        EntryRules rules = EntryRules.getDefault();
+        for (String name : NAMES) {
+            for (EntryRules.Target target : EntryRules.Target.values()) {
+                if (rules.matches(target, name) != legacy(target, name)) {
+                    throw new IllegalStateException("Mismatch for " + target + " " + name);
+                }
+            }
+        }
+        for (int i = 0; i < 5; i++) {
+            measure("legacy", false, rules);
+            measure("rules", true, rules);
+        }
+    }
+
+    /**
+     * Measure a variant.
+     *
+     * @param label the label.
+     * @param useRules true to use the rules, false for the legacy checks.
+     * @param rules the rules.
+     */
+    private static void measure(String label, boolean useRules, EntryRules rules) {
+        com.sun.management.ThreadMXBean threadBean
+                = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        EntryRules.Target[] targets = EntryRules.Target.values();
+        long bytes = threadBean.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String name : NAMES) {
+                for (EntryRules.Target target : targets) {
+                    if (useRules ? rules.matches(target, name) : legacy(target, name)) {
+                        sink++;
+                    }
+                }
+            }
+        }
+        long time = System.nanoTime() - start;
+        bytes = threadBean.getCurrentThreadAllocatedBytes() - bytes;
+        long entries = (long) ROUNDS * NAMES.length;
+        System.out.printf("%-6s %6.1f ns/entry %6d bytes/entry%n",
+                label, (double) time / entries, bytes / entries);
+    }
+
+    /**
+     * Classify an entry the way the WAR loops used to.
+     *
+     * @param target the target.
+     * @param name the entry name.
+     * @return true if the entry belongs to the target.
+     */
+    private static boolean legacy(EntryRules.Target target, String name) {
+        String filePath = OUTPUT_DIRECTORY + File.separator + name;
+        switch (target) {
+            case MAIN_SOURCE:
+                return filePath.toLowerCase().endsWith(".class")
+                        && !filePath.contains("$")
+                        && !filePath.contains("Client.class")
+                        && !filePath.contains("WebTestCase.class");
+            case TEST_SOURCE:
+                return filePath.toLowerCase().endsWith(".class")
+                        && !filePath.contains("$");
+            default:
+                return !filePath.toLowerCase().endsWith(".class");
+        }
+    }
+}
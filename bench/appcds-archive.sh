@@ -0,0 +1,23 @@
+#!/bin/sh
+#
+# Create an AppCDS archive from the classes a conversion of the fixture TCK
+# loads, so the archive covers the zip, NIO, catalog and conversion classes
+# and not only the ones of the --help path.
+#
+# Usage: bench/appcds-archive.sh <java> <jar> <jsa>
+#
+# The <java> executable must be the one that later runs the jar with the
+# archive, otherwise the JVM rejects the archive at startup.
+#
+set -e
+BASEDIR=$(cd "$(dirname "$0")/.." && pwd)
+JAVA=$1
+JAR=$(cd "$(dirname "$2")" && pwd)/$(basename "$2")
+JSA=$(cd "$(dirname "$3")" && pwd)/$(basename "$3")
+WORK=$(mktemp -d)
+trap 'rm -rf $WORK' EXIT
+
+$BASEDIR/bench/fixture.sh $WORK/fixture.zip
+mkdir $WORK/run
+cd $WORK/run
+"$JAVA" -XX:ArchiveClassesAtExit=$JSA -jar $JAR --tckUrl file:$WORK/fixture.zip > /dev/null
@@ -0,0 +1,66 @@
+#!/bin/sh
+#
+# Create a tiny TCK fixture zip at the given location.
+#
+set -e
+TARGET=$(cd "$(dirname "$1")" && pwd)/$(basename "$1")
+WORK=$(mktemp -d)
+ROOT=$WORK/servlet-tck
+SRC=$ROOT/src
+mkdir -p $SRC $ROOT/lib
+
+for FILE in com/sun/ts/tests/servlet/common/util/Data.java \
+    com/sun/ts/tests/servlet/common/util/StaticLog.java \
+    com/sun/ts/tests/common/webclient/BaseUrlClient.java \
+    com/sun/ts/lib/harness/EETest.java \
+    com/sun/ts/tests/common/webclient/http/HttpRequest.java \
+    com/sun/ts/tests/common/webclient/Util.java \
+    com/sun/ts/tests/common/webclient/http/HttpResponse.java \
+    com/sun/ts/tests/common/webclient/http/MethodFactory.java \
+    com/sun/ts/tests/common/webclient/WebTestCase.java \
+    com/sun/ts/tests/common/webclient/TestCase.java \
+    com/sun/ts/tests/common/webclient/TestFailureException.java \
+    com/sun/ts/tests/common/webclient/validation/ValidationFactory.java \
+    com/sun/ts/tests/common/webclient/validation/ValidationStrategy.java \
+    com/sun/ts/lib/harness/ServiceEETest.java; do
+    mkdir -p $SRC/$(dirname $FILE)
+    echo "package $(dirname $FILE | tr / .); public class $(basename $FILE .java) { }" > $SRC/$FILE
+done
+
+for LIB in javatest tsharness servlettck; do
+    mkdir -p $WORK/$LIB/com/example/$LIB
+    for I in 1 2 3 4 5 6 7 8 9 10; do
+        echo "resource $I" > $WORK/$LIB/com/example/$LIB/Resource$I.txt
+    done
+    (cd $WORK/$LIB && jar cf $ROOT/lib/$LIB.jar .)
+done
+
+for WAR in alpha beta; do
+    PKG=com/sun/ts/tests/servlet/$WAR
+    mkdir -p $SRC/$PKG/dist $WORK/$WAR/WEB-INF/classes
+    cat > $SRC/$PKG/TestServlet.java <<JAVA
+package $(echo $PKG | tr / .);
+public class TestServlet { }
+JAVA
+    cat > $SRC/$PKG/URLClient.java <<JAVA
+package $(echo $PKG | tr / .);
+public class URLClient {
+    /*
+     * @testName: firstTest
+     */
+    public void firstTest() { }
+
+    /*
+     * @testName: secondTest
+     */
+    public void secondTest() { }
+}
+JAVA
+    javac -d $WORK/$WAR/WEB-INF/classes $SRC/$PKG/TestServlet.java $SRC/$PKG/URLClient.java
+    echo "<html/>" > $WORK/$WAR/index.html
+    (cd $WORK/$WAR && jar cf $SRC/$PKG/dist/servlet_${WAR}_web.war .)
+done
+
+rm -f $TARGET
+(cd $WORK && jar cfM $TARGET servlet-tck)
+rm -rf $WORK
@@ -0,0 +1,54 @@
+#!/bin/sh
+#
+# Compare the startup time of the plain JVM, the AppCDS and the native image
+# variants of Mammoth, for --help and for a tiny fixture conversion.
+#
+# Build the variants first:
+#
+#   mvn -P appcds package
+#   mvn -P native package
+#
+# Usage: bench/startup.sh [iterations]
+#
+set -e
+BASEDIR=$(cd "$(dirname "$0")/.." && pwd)
+TARGET=$BASEDIR/target
+ITERATIONS=${1:-10}
+WORK=$(mktemp -d)
+trap 'rm -rf $WORK' EXIT
+
+$BASEDIR/bench/fixture.sh $WORK/fixture.zip
+
+measure() {
+    NAME=$1
+    shift
+    START=$(date +%s%N)
+    I=0
+    while [ $I -lt $ITERATIONS ]; do
+        (cd $WORK && "$@" > /dev/null 2>&1)
+        I=$((I + 1))
+    done
+    END=$(date +%s%N)
+    echo "$NAME: $(( (END - START) / ITERATIONS / 1000000 )) ms"
+}
+
+convert() {
+    rm -rf $WORK/run && mkdir $WORK/run
+    cd $WORK/run
+    "$@" --tckUrl file:$WORK/fixture.zip
+}
+
+run() {
+    VARIANT=$1
+    shift
+    measure "$VARIANT --help" "$@" --help
+    measure "$VARIANT fixture" convert "$@"
+}
+
+run "jvm    " java -jar $TARGET/mammoth.jar
+if [ -f $TARGET/mammoth.jsa ]; then
+    run "appcds " java -XX:SharedArchiveFile=$TARGET/mammoth.jsa -jar $TARGET/mammoth.jar
+fi
+if [ -x $TARGET/mammoth ]; then
+    run "native " $TARGET/mammoth
+fi
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2002-2023 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.manorrock.mammoth;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A pool of copy buffers shared by the extraction loops.
+ *
+ * <p>
+ * The pool is a fixed number of slots that are claimed and returned with
+ * atomic operations, so acquiring and releasing a buffer is thread-safe and
+ * does not allocate once the pool is warm.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class BufferPool {
+
+    /**
+     * Stores the default buffer size.
+     */
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Stores the buffer size.
+     */
+    private final int bufferSize;
+
+    /**
+     * Stores the pooled buffers.
+     */
+    private final AtomicReferenceArray<byte[]> buffers;
+
+    /**
+     * Constructor.
+     *
+     * @param bufferSize the buffer size.
+     * @throws IllegalArgumentException when the buffer size is not positive.
+     */
+    BufferPool(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.buffers = new AtomicReferenceArray<>(Math.max(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Acquire a buffer.
+     *
+     * @return the buffer.
+     */
+    byte[] acquire() {
+        for (int i = 0; i < buffers.length(); i++) {
+            byte[] buffer = buffers.getAndSet(i, null);
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return new byte[bufferSize];
+    }
+
+    /**
+     * Release a buffer back into the pool.
+     *
+     * @param buffer the buffer.
+     */
+    void release(byte[] buffer) {
+        for (int i = 0; i < buffers.length(); i++) {
+            if (buffers.compareAndSet(i, null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copy the input stream to the given file.
+     *
+     * @param input the input stream.
+     * @param file the file.
+     * @throws IOException when an I/O error occurs.
+     */
+    void copy(InputStream input, File file) throws IOException {
+        byte[] buffer = acquire();
+        try ( FileOutputStream output = new FileOutputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        } finally {
+            release(buffer);
+        }
+    }
+}
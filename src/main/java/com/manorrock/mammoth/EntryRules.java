@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2002-2023 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.manorrock.mammoth;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The rules that classify the entries of a WAR file.
+ *
+ * <p>
+ * Every target has its own ordered list of rules. An entry name is matched
+ * against the rules of a target in order and the first matching rule decides
+ * whether the entry is included. An entry that no rule includes is skipped.
+ * </p>
+ *
+ * <p>
+ * The rules are read once from a rules file, one rule per line in the form
+ * <code>&lt;target&gt; &lt;include|exclude&gt; &lt;match&gt; [&lt;text&gt;]</code>,
+ * where the target is <code>main-source</code>, <code>test-source</code> or
+ * <code>webapp-resource</code> and the match is <code>any</code>,
+ * <code>prefix</code>, <code>suffix</code> or <code>contains</code>,
+ * optionally followed by <code>-ignore-case</code>. Lines starting with
+ * <code>#</code> are comments. Matching works on the raw entry name and does
+ * not allocate.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public class EntryRules {
+
+    /**
+     * Stores the location of the default rules.
+     */
+    private static final String DEFAULT_RULES = "/META-INF/mammoth/entry-rules.conf";
+
+    /**
+     * The targets an entry can be classified into.
+     */
+    public enum Target {
+
+        /**
+         * A class that gets its Java source added to the main sources.
+         */
+        MAIN_SOURCE,
+
+        /**
+         * A class that gets its Java source added to the test sources.
+         */
+        TEST_SOURCE,
+
+        /**
+         * A resource that is extracted into the web application.
+         */
+        WEBAPP_RESOURCE
+    }
+
+    /**
+     * The ways a rule can match an entry name.
+     */
+    private enum Match {
+        ANY, PREFIX, SUFFIX, CONTAINS
+    }
+
+    /**
+     * A single rule.
+     */
+    private static class Rule {
+
+        /**
+         * Stores the ignore case flag.
+         */
+        private final boolean ignoreCase;
+
+        /**
+         * Stores the include flag.
+         */
+        private final boolean include;
+
+        /**
+         * Stores the match.
+         */
+        private final Match match;
+
+        /**
+         * Stores the text to match.
+         */
+        private final String text;
+
+        /**
+         * Constructor.
+         *
+         * @param include the include flag.
+         * @param match the match.
+         * @param ignoreCase the ignore case flag.
+         * @param text the text to match.
+         */
+        Rule(boolean include, Match match, boolean ignoreCase, String text) {
+            this.include = include;
+            this.match = match;
+            this.ignoreCase = ignoreCase;
+            this.text = text;
+        }
+
+        /**
+         * Does the rule match the given entry name.
+         *
+         * @param name the entry name.
+         * @return true if it does, false otherwise.
+         */
+        boolean matches(String name) {
+            switch (match) {
+                case PREFIX:
+                    return name.regionMatches(ignoreCase, 0, text, 0, text.length());
+                case SUFFIX:
+                    return name.regionMatches(ignoreCase, name.length() - text.length(), text, 0, text.length());
+                case CONTAINS:
+                    if (!ignoreCase) {
+                        return name.contains(text);
+                    }
+                    for (int i = 0; i <= name.length() - text.length(); i++) {
+                        if (name.regionMatches(true, i, text, 0, text.length())) {
+                            return true;
+                        }
+                    }
+                    return false;
+                default:
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * Stores the default rules.
+     */
+    private static EntryRules defaultRules;
+
+    /**
+     * Stores the rules by target ordinal.
+     */
+    private final Rule[][] rules;
+
+    /**
+     * Constructor.
+     *
+     * @param rules the rules by target ordinal.
+     */
+    private EntryRules(Rule[][] rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Get the default rules.
+     *
+     * @return the default rules.
+     * @throws IOException when the default rules cannot be read.
+     */
+    public static synchronized EntryRules getDefault() throws IOException {
+        if (defaultRules == null) {
+            try ( InputStream input = EntryRules.class.getResourceAsStream(DEFAULT_RULES)) {
+                if (input == null) {
+                    throw new IOException("Unable to find " + DEFAULT_RULES);
+                }
+                defaultRules = parse(input, DEFAULT_RULES);
+            }
+        }
+        return defaultRules;
+    }
+
+    /**
+     * Load the rules from the given file.
+     *
+     * @param file the rules file.
+     * @return the rules.
+     * @throws IOException when an I/O error occurs or the file is invalid.
+     */
+    public static EntryRules load(File file) throws IOException {
+        try ( InputStream input = new FileInputStream(file)) {
+            return parse(input, file.toString());
+        }
+    }
+
+    /**
+     * Parse the rules.
+     *
+     * @param input the input stream.
+     * @param location the location used in error messages.
+     * @return the rules.
+     * @throws IOException when an I/O error occurs or the rules are invalid.
+     */
+    private static EntryRules parse(InputStream input, String location) throws IOException {
+        List<List<Rule>> targetRules = new ArrayList<>();
+        for (Target target : Target.values()) {
+            targetRules.add(new ArrayList<>());
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+", 4);
+            try {
+                if (tokens.length < 3) {
+                    throw new IllegalArgumentException("expected <target> <include|exclude> <match> [<text>]");
+                }
+                Target target = Target.valueOf(tokens[0].toUpperCase(Locale.ROOT).replace('-', '_'));
+                if (!tokens[1].equals("include") && !tokens[1].equals("exclude")) {
+                    throw new IllegalArgumentException("expected include or exclude, got " + tokens[1]);
+                }
+                String matchName = tokens[2];
+                boolean ignoreCase = matchName.endsWith("-ignore-case");
+                if (ignoreCase) {
+                    matchName = matchName.substring(0, matchName.length() - "-ignore-case".length());
+                }
+                Match match = Match.valueOf(matchName.toUpperCase(Locale.ROOT));
+                String text = tokens.length == 4 ? tokens[3] : "";
+                if (match != Match.ANY && text.isEmpty()) {
+                    throw new IllegalArgumentException("missing text to match");
+                }
+                targetRules.get(target.ordinal()).add(
+                        new Rule(tokens[1].equals("include"), match, ignoreCase, text));
+            } catch (IllegalArgumentException iae) {
+                throw new IOException("Invalid rule at " + location + ":" + lineNumber + ": " + iae.getMessage());
+            }
+        }
+        Rule[][] rules = new Rule[targetRules.size()][];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = targetRules.get(i).toArray(new Rule[0]);
+        }
+        return new EntryRules(rules);
+    }
+
+    /**
+     * Does the given entry name belong to the given target.
+     *
+     * @param target the target.
+     * @param name the raw entry name.
+     * @return true if it does, false otherwise.
+     */
+    public boolean matches(Target target, String name) {
+        for (Rule rule : rules[target.ordinal()]) {
+            if (rule.matches(name)) {
+                return rule.include;
+            }
+        }
+        return false;
+    }
+}
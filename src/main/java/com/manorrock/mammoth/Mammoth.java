@@ -27,24 +27,49 @@
  */
 package com.manorrock.mammoth;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.CopyOption;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Enumeration;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.zip.Inflater;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -54,16 +79,96 @@ import java.util.zip.ZipInputStream;
  */
 public class Mammoth {
 
+    /**
+     * Stores the buffer pool.
+     */
+    private BufferPool bufferPool = new BufferPool(BufferPool.DEFAULT_BUFFER_SIZE);
+
+    /**
+     * Stores the TCK catalog.
+     */
+    private TckCatalog catalog;
+
+    /**
+     * Stores the number of download connections.
+     */
+    private int downloadConnections = 4;
+
+    /**
+     * Stores the durations by phase.
+     */
+    private final Map<MammothPhase, Duration> durations = new EnumMap<>(MammothPhase.class);
+
+    /**
+     * Stores the number of processed entries.
+     */
+    private long entryCount;
+
+    /**
+     * Stores the entry rules.
+     */
+    private EntryRules entryRules;
+
+    /**
+     * Stores the entry rules file.
+     */
+    private File entryRulesFile;
+
+    /**
+     * Stores the errors by phase.
+     */
+    private final Map<MammothPhase, List<Exception>> errors = new EnumMap<>(MammothPhase.class);
+
+    /**
+     * Stores the jar artifacts flag.
+     */
+    private boolean jarArtifacts;
+
+    /**
+     * Stores the listeners.
+     */
+    private final List<MammothListener> listeners = new ArrayList<>();
+
     /**
      * Stores the Maven directory.
      */
     private File mavenDir = new File("maven");
 
+    /**
+     * Stores the output timestamp used for reproducible builds.
+     */
+    private String outputTimestamp = "1980-01-01T00:00:02Z";
+
+    /**
+     * Stores the current phase.
+     */
+    private MammothPhase phase;
+
+    /**
+     * Stores the reproducible flag.
+     */
+    private boolean reproducible;
+
+    /**
+     * Stores the number of shards.
+     */
+    private int shards;
+
+    /**
+     * Stores the shard timings file.
+     */
+    private File shardTimings;
+
     /**
      * Stores the show help flag.
      */
     private boolean showHelp;
 
+    /**
+     * Stores the mapping of TCK source files to the files generated from them.
+     */
+    private final Map<String, Set<File>> sourceMapping = new HashMap<>();
+
     /**
      * Stores the TCK directory.
      */
@@ -79,53 +184,243 @@ public class Mammoth {
      */
     private String tckZipFile = "tck.zip";
 
+    /**
+     * Stores the verify flag.
+     */
+    private boolean verify;
+
+    /**
+     * Stores the extra classpath used for verifying.
+     */
+    private List<File> verifyClasspath = new ArrayList<>();
+
+    /**
+     * Stores the watch flag.
+     */
+    private boolean watch;
+
+    /**
+     * Stores the WAR files added to the webapps directory while watching.
+     */
+    private final Set<File> watchedWarFiles = new TreeSet<>();
+
     /**
      * Stores the webapps directory.
      */
     private File webAppsDir = new File("webapps");
 
+    /**
+     * Constructor for command-line use, messages are printed to System.out
+     * and warnings and errors to System.err.
+     */
+    public Mammoth() {
+        listeners.add(new MammothListener() {
+            @Override
+            public void messageReported(MammothPhase phase, String message) {
+                System.out.println(message);
+            }
+
+            @Override
+            public void warningReported(MammothPhase phase, String message) {
+                System.err.println(message);
+            }
+
+            @Override
+            public void errorOccurred(MammothPhase phase, Exception exception) {
+                if (exception instanceof VerificationException) {
+                    System.err.println(exception.getMessage() + ":");
+                    ((VerificationException) exception).getCompileErrors()
+                            .forEach(compileError -> System.err.println("  " + compileError));
+                } else {
+                    exception.printStackTrace(System.err);
+                }
+            }
+        });
+    }
+
+    /**
+     * Constructor for embedded use.
+     *
+     * @param configuration the configuration.
+     */
+    public Mammoth(MammothConfiguration configuration) {
+        bufferPool = new BufferPool(configuration.getBufferSize());
+        downloadConnections = configuration.getDownloadConnections();
+        entryRulesFile = configuration.getEntryRulesFile();
+        jarArtifacts = configuration.isJarArtifacts();
+        listeners.addAll(configuration.getListeners());
+        mavenDir = configuration.getMavenDir();
+        reproducible = configuration.isReproducible();
+        shards = configuration.getShards();
+        shardTimings = configuration.getShardTimings();
+        tckDir = configuration.getTckDir();
+        tckUrl = configuration.getTckUrl();
+        tckZipFile = configuration.getTckZipFile();
+        verify = configuration.isVerify();
+        verifyClasspath = configuration.getVerifyClasspath();
+        watch = configuration.isWatch();
+        webAppsDir = configuration.getWebAppsDir();
+    }
+
+    /**
+     * Get the Maven module directory for the given WAR file.
+     *
+     * @param file the WAR file.
+     * @return the module directory.
+     */
+    private File getModuleDir(File file) {
+        return new File(mavenDir,
+                file.getName().substring(0, file.getName().toLowerCase().indexOf(".war")));
+    }
+
+    /**
+     * Get the file in the TCK directory for the given TCK zip entry name.
+     *
+     * @param name the entry name.
+     * @return the file.
+     */
+    private File getTckFile(String name) {
+        return new File(tckDir, name.substring(name.indexOf("/")));
+    }
+
+    /**
+     * Get the deployed WAR files.
+     *
+     * @return the WAR files.
+     */
+    private List<File> getWarFiles() {
+        Set<File> files = new TreeSet<>(watchedWarFiles);
+        if (catalog != null) {
+            for (String name : catalog.getNames(TckCatalog.Kind.WAR)) {
+                File file = new File(webAppsDir, name.substring(name.lastIndexOf('/') + 1));
+                if (file.isFile()) {
+                    files.add(file);
+                }
+            }
+        } else {
+            /*
+             * Without a catalog (e.g. a pre-populated TCK directory) fall
+             * back to listing the webapps directory.
+             */
+            File[] webApps = webAppsDir.listFiles();
+            if (webApps != null) {
+                for (File file : webApps) {
+                    if (file.isFile() && file.getName().toLowerCase().endsWith(".war")) {
+                        files.add(file);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Get the given jar file from the TCK lib directory.
+     *
+     * @param name the jar file name.
+     * @return the jar file.
+     */
+    private File getLibraryJar(String name) {
+        if (catalog != null) {
+            for (String entryName : catalog.getNames(TckCatalog.Kind.LIB_JAR)) {
+                if (entryName.endsWith("/lib/" + name)) {
+                    return getTckFile(entryName);
+                }
+            }
+        }
+        return new File(tckDir, "lib/" + name);
+    }
+
+    /**
+     * Get the entry rules, loading them on first use.
+     *
+     * @return the entry rules.
+     * @throws IOException when the rules cannot be read.
+     */
+    private synchronized EntryRules getEntryRules() throws IOException {
+        if (entryRules == null) {
+            entryRules = entryRulesFile != null ? EntryRules.load(entryRulesFile) : EntryRules.getDefault();
+        }
+        return entryRules;
+    }
+
+    /**
+     * Get the path of the Java source of the given class entry.
+     *
+     * @param entryName the class entry name.
+     * @return the source path relative to the source directory.
+     */
+    private String getSourcePath(String entryName) {
+        int start = entryName.lastIndexOf("WEB-INF/classes/");
+        start = start != -1 ? start + "WEB-INF/classes/".length() : 0;
+        return entryName.substring(start, entryName.length() - ".class".length()) + ".java";
+    }
+
+    /**
+     * Get the sorted names of the WAR modules.
+     *
+     * @return the module names.
+     */
+    private List<String> getWarModuleNames() {
+        List<String> moduleNames = new ArrayList<>();
+        for (File file : getWarFiles()) {
+            moduleNames.add(getModuleDir(file).getName());
+        }
+        Collections.sort(moduleNames);
+        return moduleNames;
+    }
+
+    /**
+     * Open the TCK catalog, if there is a TCK zip file.
+     */
+    private void openCatalog() {
+        catalog = null;
+        if (!new File(tckZipFile).isFile()) {
+            return;
+        }
+        try {
+            catalog = TckCatalog.open(new File(tckZipFile));
+        } catch (IOException ioe) {
+            error(ioe);
+        }
+    }
+
     /**
      * Add the Java sources.
      */
     private void addJavaSources() {
-        File[] files = webAppsDir.listFiles();
-        for (File file : files) {
-            try {
-                File outputDirectory = new File(mavenDir,
-                        file.getName().substring(0, file.getName().toLowerCase().indexOf(".war"))
-                        + File.separator
-                        + "src/main/java");
-
-                if (!outputDirectory.exists()) {
-                    outputDirectory.mkdirs();
-                }
+        for (File file : getWarFiles()) {
+            addJavaSources(file);
+        }
+    }
 
-                try ( ZipInputStream zipInput = new ZipInputStream(new FileInputStream(file))) {
-                    ZipEntry entry = zipInput.getNextEntry();
-                    while (entry != null) {
-                        String filePath = outputDirectory + File.separator + entry.getName();
-                        if (!entry.isDirectory() && filePath.toLowerCase().endsWith(".class")
-                                && !filePath.contains("$")
-                                && !filePath.contains("Client.class")
-                                && !filePath.contains("WebTestCase.class")) {
-                            String classFilePath = filePath.substring(0, filePath.lastIndexOf(".class"));
-                            classFilePath = classFilePath.substring(
-                                    classFilePath.lastIndexOf("WEB-INF/classes/")
-                                    + "WEB-INF/classes/".length());
-                            File classFile = new File(tckDir, "src/" + classFilePath + ".java");
-                            File outputFile = new File(outputDirectory, classFilePath + ".java");
-                            if (!outputFile.getParentFile().exists()) {
-                                outputFile.getParentFile().mkdirs();
-                            }
-                            Files.copy(classFile.toPath(), outputFile.toPath());
-                        }
-                        zipInput.closeEntry();
-                        entry = zipInput.getNextEntry();
+    /**
+     * Add the Java sources for the given WAR file.
+     *
+     * @param file the WAR file.
+     */
+    private void addJavaSources(File file) {
+        try {
+            EntryRules rules = getEntryRules();
+            File outputDirectory = new File(getModuleDir(file), "src/main/java");
+
+            if (!outputDirectory.exists()) {
+                outputDirectory.mkdirs();
+            }
+
+            try ( ZipInputStream zipInput = new ZipInputStream(new FileInputStream(file))) {
+                ZipEntry entry = zipInput.getNextEntry();
+                while (entry != null) {
+                    if (!entry.isDirectory() && rules.matches(EntryRules.Target.MAIN_SOURCE, entry.getName())) {
+                        String sourcePath = getSourcePath(entry.getName());
+                        copySourceFile(sourcePath, new File(outputDirectory, sourcePath));
                     }
+                    zipInput.closeEntry();
+                    entry = zipInput.getNextEntry();
                 }
-            } catch (IOException ioe) {
-                ioe.printStackTrace(System.err);
             }
+        } catch (IOException ioe) {
+            error(ioe);
         }
     }
 
@@ -139,15 +434,13 @@ public class Mammoth {
                 mavenDir.mkdirs();
             }
             // 1. create directories
-            String[] filenames = webAppsDir.list();
-            for (String filename : filenames) {
-                File newFile = new File(mavenDir, filename.substring(0, filename.lastIndexOf(".war")));
-                newFile.mkdirs();
+            for (File file : getWarFiles()) {
+                getModuleDir(file).mkdirs();
             }
             // 2. create POMs for WARs
             File[] directories = mavenDir.listFiles();
             for (File directory : directories) {
-                if (directory.isDirectory()) {
+                if (directory.isDirectory() && !directory.getName().startsWith(".")) {
                     File pomFile = new File(directory, "pom.xml");
                     if (pomFile.createNewFile()) {
                         String content = """
@@ -227,21 +520,84 @@ public class Mammoth {
                     }
                 }
             }
-            // 3. create top-level POM
+            // 3. create the build cache configuration.
+            if (reproducible) {
+                createBuildCacheConfiguration();
+            }
+        } catch (IOException ioe) {
+            error(ioe);
+        }
+    }
+
+    /**
+     * Create the top-level POM.
+     */
+    private void createTopLevelPom() {
+        try {
             File topLevelPomFile = new File(mavenDir, "pom.xml");
             if (topLevelPomFile.createNewFile()) {
-                StringBuilder modules = new StringBuilder();
+                writeTopLevelPom(topLevelPomFile);
+            }
+        } catch (IOException ioe) {
+            error(ioe);
+        }
+    }
 
-                directories = mavenDir.listFiles();
-                for (File directory : directories) {
-                    if (directory.isDirectory()) {
-                        modules.append("<module>").append(directory.getName()).append("</module>\n");
-                    }
-                }
+    /**
+     * Write the top-level POM with the current WAR modules.
+     *
+     * @param topLevelPomFile the top-level POM file.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void writeTopLevelPom(File topLevelPomFile) throws IOException {
+        List<String> moduleNames = getWarModuleNames();
 
-                String content = """
+        StringBuilder modules = new StringBuilder();
+        StringBuilder properties = new StringBuilder();
+        StringBuilder plugins = new StringBuilder();
+        StringBuilder profiles = new StringBuilder();
+
+        if (shards > 0) {
+            createShardProfiles(moduleNames, profiles);
+            properties.append("    <tck.forkCount>1</tck.forkCount>\n");
+            plugins.append("""
+                                   <plugin>
+                                     <groupId>org.apache.maven.plugins</groupId>
+                                     <artifactId>maven-surefire-plugin</artifactId>
+                                     <version>3.2.2</version>
+                                     <configuration>
+                                       <forkCount>${tck.forkCount}</forkCount>
+                                       <reuseForks>true</reuseForks>
+                                     </configuration>
+                                   </plugin>
+                           """);
+        } else {
+            for (String moduleName : moduleNames) {
+                modules.append("<module>").append(moduleName).append("</module>\n");
+            }
+        }
+
+        if (reproducible) {
+            properties.append("    <project.build.outputTimestamp>")
+                    .append(outputTimestamp)
+                    .append("</project.build.outputTimestamp>\n");
+            plugins.append("""
+                                   <plugin>
+                                     <groupId>org.apache.maven.plugins</groupId>
+                                     <artifactId>maven-jar-plugin</artifactId>
+                                     <version>3.3.0</version>
+                                   </plugin>
+                                   <plugin>
+                                     <groupId>org.apache.maven.plugins</groupId>
+                                     <artifactId>maven-resources-plugin</artifactId>
+                                     <version>3.3.1</version>
+                                   </plugin>
+                           """);
+        }
+
+        String content = """
 <?xml version="1.0" encoding="UTF-8"?>
-                                         
+                                 
 <project xmlns="http://maven.apache.org/POM/4.0.0" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:schemaLocation="http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd">
   <modelVersion>4.0.0</modelVersion>
   <groupId>tck</groupId>
@@ -251,7 +607,7 @@ public class Mammoth {
   <name>TCK</name>
   <properties>
     <project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>
-  </properties>
+%s  </properties>
   <modules>
       <module>javatest</module>
       <module>tsharness</module>
@@ -259,17 +615,232 @@ public class Mammoth {
       <module>servlettck</module>
 %s
   </modules>
-</project>                                           
-                                         """;
-                try ( FileWriter writer = new FileWriter(topLevelPomFile)) {
-                    writer.write(String.format(
-                            content,
-                            modules.toString()));
-                    writer.flush();
+%s%s</project>                                           
+                                 """;
+        try ( FileWriter writer = new FileWriter(topLevelPomFile)) {
+            writer.write(String.format(
+                    content,
+                    properties.toString(),
+                    modules.toString(),
+                    plugins.length() > 0 ? """
+                                             <build>
+                                               <pluginManagement>
+                                                 <plugins>
+                                           %s      </plugins>
+                                               </pluginManagement>
+                                             </build>
+                                           """.formatted(plugins) : "",
+                    profiles.length() > 0 ? """
+                                              <profiles>
+                                            %s  </profiles>
+                                            """.formatted(profiles) : ""));
+            writer.flush();
+        }
+    }
+
+    /**
+     * Create the shard profiles.
+     *
+     * <p>
+     * The 'all' profile, which contains every WAR module, is active unless
+     * one of the 'shard-N' profiles is activated. The modules are assigned
+     * to the shards by estimated cost, most expensive first, each going to
+     * the shard with the lowest total cost so far.
+     * </p>
+     *
+     * @param moduleNames the WAR module names.
+     * @param profiles the string builder to append the profiles to.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void createShardProfiles(List<String> moduleNames, StringBuilder profiles) throws IOException {
+        Map<String, Double> costs = estimateCosts(moduleNames);
+        List<String> sortedNames = new ArrayList<>(moduleNames);
+        sortedNames.sort(Comparator.comparing((String name) -> costs.get(name)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        double[] shardCosts = new double[shards];
+        List<List<String>> shardModules = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            shardModules.add(new ArrayList<>());
+        }
+        for (String name : sortedNames) {
+            int shard = 0;
+            for (int i = 1; i < shards; i++) {
+                if (shardCosts[i] < shardCosts[shard]) {
+                    shard = i;
                 }
             }
-        } catch (IOException ioe) {
-            ioe.printStackTrace(System.err);
+            shardCosts[shard] += costs.get(name);
+            shardModules.get(shard).add(name);
+        }
+
+        profiles.append("""
+                            <profile>
+                              <id>all</id>
+                              <activation>
+                                <activeByDefault>true</activeByDefault>
+                              </activation>
+                              <modules>
+                        """);
+        for (String name : moduleNames) {
+            profiles.append("        <module>").append(name).append("</module>\n");
+        }
+        profiles.append("""
+                              </modules>
+                            </profile>
+                        """);
+        for (int i = 0; i < shards; i++) {
+            Collections.sort(shardModules.get(i));
+            profiles.append(String.format(Locale.ROOT, """
+                                              <profile>
+                                                <!-- estimated cost: %.1f -->
+                                                <id>shard-%d</id>
+                                                <modules>
+                                          """, shardCosts[i], i + 1));
+            for (String name : shardModules.get(i)) {
+                profiles.append("        <module>").append(name).append("</module>\n");
+            }
+            profiles.append("""
+                                  </modules>
+                                </profile>
+                            """);
+        }
+    }
+
+    /**
+     * Estimate the cost of running the tests of the given WAR modules.
+     *
+     * <p>
+     * If a shard timings file is given the recorded time of a module is used
+     * as its cost. For all other modules the number of test methods (the
+     * '@testName:' tags) in its test sources is used, scaled by the average
+     * time per test method of the recorded modules that have test methods.
+     * If none of the recorded modules has test methods the average recorded
+     * time per module is used instead, so recorded and estimated costs are
+     * always in seconds.
+     * </p>
+     *
+     * @param moduleNames the WAR module names.
+     * @return the costs by module name.
+     * @throws IOException when an I/O error occurs.
+     */
+    private Map<String, Double> estimateCosts(List<String> moduleNames) throws IOException {
+        Properties timings = new Properties();
+        if (shardTimings != null) {
+            try ( FileInputStream input = new FileInputStream(shardTimings)) {
+                timings.load(input);
+            }
+        }
+        Map<String, Integer> testCounts = new HashMap<>();
+        double timedSeconds = 0;
+        int timedModules = 0;
+        double timedTestSeconds = 0;
+        int timedTests = 0;
+        for (String name : moduleNames) {
+            int testCount = countTests(new File(mavenDir, name + "/src/test/java"));
+            testCounts.put(name, testCount);
+            if (timings.getProperty(name) != null) {
+                double seconds = Double.parseDouble(timings.getProperty(name));
+                timedSeconds += seconds;
+                timedModules++;
+                if (testCount > 0) {
+                    timedTestSeconds += seconds;
+                    timedTests += testCount;
+                }
+            }
+        }
+        Map<String, Double> costs = new HashMap<>();
+        for (String name : moduleNames) {
+            if (timings.getProperty(name) != null) {
+                costs.put(name, Double.parseDouble(timings.getProperty(name)));
+            } else if (timedTests > 0) {
+                costs.put(name, Math.max(testCounts.get(name), 1) * timedTestSeconds / timedTests);
+            } else if (timedModules > 0) {
+                costs.put(name, timedSeconds / timedModules);
+            } else {
+                costs.put(name, (double) Math.max(testCounts.get(name), 1));
+            }
+        }
+        return costs;
+    }
+
+    /**
+     * Count the test methods in the Java sources of the given directory.
+     *
+     * @param directory the directory.
+     * @return the number of test methods.
+     * @throws IOException when an I/O error occurs.
+     */
+    private int countTests(File directory) throws IOException {
+        int count = 0;
+        if (directory.exists()) {
+            try ( Stream<Path> walk = Files.walk(directory.toPath())) {
+                List<Path> paths = walk
+                        .filter(path -> path.toString().endsWith(".java"))
+                        .collect(Collectors.toList());
+                for (Path path : paths) {
+                    String source = Files.readString(path, StandardCharsets.ISO_8859_1);
+                    int index = source.indexOf("@testName:");
+                    while (index != -1) {
+                        count++;
+                        index = source.indexOf("@testName:", index + 1);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Create the Maven build cache extension configuration.
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    private void createBuildCacheConfiguration() throws IOException {
+        File mvnDir = new File(mavenDir, ".mvn");
+        mvnDir.mkdirs();
+        File extensionsFile = new File(mvnDir, "extensions.xml");
+        if (extensionsFile.createNewFile()) {
+            String content = """
+<?xml version="1.0" encoding="UTF-8"?>
+
+<extensions xmlns="http://maven.apache.org/EXTENSIONS/1.1.0" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:schemaLocation="http://maven.apache.org/EXTENSIONS/1.1.0 https://maven.apache.org/xsd/core-extensions-1.1.0.xsd">
+  <extension>
+    <groupId>org.apache.maven.extensions</groupId>
+    <artifactId>maven-build-cache-extension</artifactId>
+    <version>1.0.1</version>
+  </extension>
+</extensions>
+                             """;
+            try ( FileWriter writer = new FileWriter(extensionsFile)) {
+                writer.write(content);
+                writer.flush();
+            }
+        }
+        File cacheConfigFile = new File(mvnDir, "maven-build-cache-config.xml");
+        if (cacheConfigFile.createNewFile()) {
+            String content = """
+<?xml version="1.0" encoding="UTF-8"?>
+
+<cache xmlns="http://maven.apache.org/BUILD-CACHE-CONFIG/1.0.0" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:schemaLocation="http://maven.apache.org/BUILD-CACHE-CONFIG/1.0.0 https://maven.apache.org/xsd/build-cache-config-1.0.0.xsd">
+  <configuration>
+    <enabled>true</enabled>
+    <hashAlgorithm>XX</hashAlgorithm>
+    <validateXml>true</validateXml>
+  </configuration>
+  <input>
+    <global>
+      <glob>*</glob>
+      <includes>
+        <include>src/</include>
+      </includes>
+    </global>
+  </input>
+</cache>
+                             """;
+            try ( FileWriter writer = new FileWriter(cacheConfigFile)) {
+                writer.write(content);
+                writer.flush();
+            }
         }
     }
 
@@ -285,6 +856,10 @@ public class Mammoth {
             // 1. create the javatest.jar project directory.
             File javaTestProjectDir = new File(mavenDir, "javatest");
             javaTestProjectDir.mkdir();
+            if (jarArtifacts) {
+                createJarArtifactProject(javaTestProjectDir, getLibraryJar("javatest.jar"));
+                return;
+            }
             // 2. create POM file.
             File pomFile = new File(javaTestProjectDir, "pom.xml");
             if (pomFile.createNewFile()) {
@@ -334,7 +909,7 @@ public class Mammoth {
             }
 
             try ( ZipInputStream zipInput = new ZipInputStream(
-                    new FileInputStream(new File(tckDir, "lib/javatest.jar")))) {
+                    new FileInputStream(getLibraryJar("javatest.jar")))) {
                 ZipEntry entry = zipInput.getNextEntry();
                 while (entry != null) {
                     if (!entry.isDirectory()) {
@@ -342,7 +917,9 @@ public class Mammoth {
                         if (!outputFile.getParentFile().exists()) {
                             outputFile.getParentFile().mkdirs();
                         }
-                        Files.copy(zipInput, outputFile.toPath());
+                        bufferPool.copy(zipInput, outputFile);
+                        setLastModified(outputFile, entry);
+                        entryProcessed(entry.getName());
                     }
                     zipInput.closeEntry();
                     entry = zipInput.getNextEntry();
@@ -350,7 +927,7 @@ public class Mammoth {
             }
 
         } catch (IOException ioe) {
-            ioe.printStackTrace(System.err);
+            error(ioe);
         }
     }
 
@@ -366,6 +943,10 @@ public class Mammoth {
             // 1. create the tsharness.jar project directory.
             File tsHarnessProjectDir = new File(mavenDir, "tsharness");
             tsHarnessProjectDir.mkdir();
+            if (jarArtifacts) {
+                createJarArtifactProject(tsHarnessProjectDir, getLibraryJar("tsharness.jar"));
+                return;
+            }
             // 2. create POM file.
             File pomFile = new File(tsHarnessProjectDir, "pom.xml");
             if (pomFile.createNewFile()) {
@@ -415,7 +996,7 @@ public class Mammoth {
             }
 
             try ( ZipInputStream zipInput = new ZipInputStream(
-                    new FileInputStream(new File(tckDir, "lib/tsharness.jar")))) {
+                    new FileInputStream(getLibraryJar("tsharness.jar")))) {
                 ZipEntry entry = zipInput.getNextEntry();
                 while (entry != null) {
                     if (!entry.isDirectory()) {
@@ -423,7 +1004,9 @@ public class Mammoth {
                         if (!outputFile.getParentFile().exists()) {
                             outputFile.getParentFile().mkdirs();
                         }
-                        Files.copy(zipInput, outputFile.toPath());
+                        bufferPool.copy(zipInput, outputFile);
+                        setLastModified(outputFile, entry);
+                        entryProcessed(entry.getName());
                     }
                     zipInput.closeEntry();
                     entry = zipInput.getNextEntry();
@@ -431,8 +1014,76 @@ public class Mammoth {
             }
 
         } catch (IOException ioe) {
-            ioe.printStackTrace(System.err);
+            error(ioe);
+        }
+    }
+
+    /**
+     * Create a project that uses the given jar file as its artifact.
+     *
+     * @param projectDir the project directory.
+     * @param jarFile the jar file.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void createJarArtifactProject(File projectDir, File jarFile) throws IOException {
+        // 1. create POM file.
+        File pomFile = new File(projectDir, "pom.xml");
+        if (pomFile.createNewFile()) {
+            String content = """
+<?xml version="1.0" encoding="UTF-8"?>
+                                         
+<project xmlns="http://maven.apache.org/POM/4.0.0" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:schemaLocation="http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd">
+  <modelVersion>4.0.0</modelVersion>
+  <parent>
+    <groupId>tck</groupId>
+    <artifactId>project</artifactId>
+    <version>1-SNAPSHOT</version>
+  </parent>
+  <artifactId>%s</artifactId>
+  <packaging>pom</packaging>
+  <name>TCK - %s</name>
+  <build>
+    <plugins>
+      <plugin>
+        <groupId>org.codehaus.mojo</groupId>
+        <artifactId>build-helper-maven-plugin</artifactId>
+        <version>3.4.0</version>
+        <executions>
+          <execution>
+            <id>attach-jar</id>
+            <phase>initialize</phase>
+            <goals>
+              <goal>attach-artifact</goal>
+            </goals>
+            <configuration>
+              <artifacts>
+                <artifact>
+                  <file>${project.basedir}/%s</file>
+                  <type>jar</type>
+                </artifact>
+              </artifacts>
+            </configuration>
+          </execution>
+        </executions>
+      </plugin>
+    </plugins>
+  </build>
+</project>                                           
+                                         """;
+            try ( FileWriter writer = new FileWriter(pomFile)) {
+                writer.write(String.format(
+                        content,
+                        projectDir.getName(),
+                        projectDir.getName(),
+                        jarFile.getName()));
+                writer.flush();
+            }
         }
+        // 2. copy the jar file into the project directory.
+        File outputFile = new File(projectDir, jarFile.getName());
+        Files.deleteIfExists(outputFile.toPath());
+        copyFile(jarFile, outputFile);
+        entryProcessed(jarFile.getName());
     }
 
     /**
@@ -515,64 +1166,50 @@ public class Mammoth {
                 outputDirectory.mkdirs();
             }
 
-            File inputFile = new File(tckDir, "src/com/sun/ts/tests/servlet/common/util/Data.java");
-            File outputFile = new File(outputDirectory, "com/sun/ts/tests/servlet/common/util/Data.java");
-            copyFile(inputFile, outputFile);
+            copySourceFile("com/sun/ts/tests/servlet/common/util/Data.java",
+                    new File(outputDirectory, "com/sun/ts/tests/servlet/common/util/Data.java"));
 
-            inputFile = new File(tckDir, "src/com/sun/ts/tests/servlet/common/util/StaticLog.java");
-            outputFile = new File(outputDirectory, "com/sun/ts/tests/servlet/common/util/StaticLog.java");
-            copyFile(inputFile, outputFile);
+            copySourceFile("com/sun/ts/tests/servlet/common/util/StaticLog.java",
+                    new File(outputDirectory, "com/sun/ts/tests/servlet/common/util/StaticLog.java"));
             
-            inputFile = new File(tckDir, "src/com/sun/ts/tests/common/webclient/BaseUrlClient.java");
-            outputFile = new File(outputDirectory, "com/sun/ts/tests/common/webclient/BaseUrlClient.java");
-            copyFile(inputFile, outputFile);
+            copySourceFile("com/sun/ts/tests/common/webclient/BaseUrlClient.java",
+                    new File(outputDirectory, "com/sun/ts/tests/common/webclient/BaseUrlClient.java"));
 
-            inputFile = new File(tckDir, "src/com/sun/ts/lib/harness/EETest.java");
-            outputFile = new File(outputDirectory, "com/sun/ts/lib/harness/EETest.java");
-            copyFile(inputFile, outputFile);
+            copySourceFile("com/sun/ts/lib/harness/EETest.java",
+                    new File(outputDirectory, "com/sun/ts/lib/harness/EETest.java"));
             
-            inputFile = new File(tckDir, "src/com/sun/ts/tests/common/webclient/http/HttpRequest.java");
-            outputFile = new File(outputDirectory, "com/sun/ts/tests/common/webclient/http/HttpRequest.java");
-            copyFile(inputFile, outputFile);
+            copySourceFile("com/sun/ts/tests/common/webclient/http/HttpRequest.java",
+                    new File(outputDirectory, "com/sun/ts/tests/common/webclient/http/HttpRequest.java"));
             
-            inputFile = new File(tckDir, "src/com/sun/ts/tests/common/webclient/Util.java");
-            outputFile = new File(outputDirectory, "com/sun/ts/tests/common/webclient/Util.java");
-            copyFile(inputFile, outputFile);
+            copySourceFile("com/sun/ts/tests/common/webclient/Util.java",
+                    new File(outputDirectory, "com/sun/ts/tests/common/webclient/Util.java"));
 
-            inputFile = new File(tckDir, "src/com/sun/ts/tests/common/webclient/http/HttpResponse.java");
-            outputFile = new File(outputDirectory, "com/sun/ts/tests/common/webclient/http/HttpResponse.java");
-            copyFile(inputFile, outputFile);
+            copySourceFile("com/sun/ts/tests/common/webclient/http/HttpResponse.java",
+                    new File(outputDirectory, "com/sun/ts/tests/common/webclient/http/HttpResponse.java"));
 
-            inputFile = new File(tckDir, "src/com/sun/ts/tests/common/webclient/http/MethodFactory.java");
-            outputFile = new File(outputDirectory, "com/sun/ts/tests/common/webclient/http/MethodFactory.java");
-            copyFile(inputFile, outputFile);
+            copySourceFile("com/sun/ts/tests/common/webclient/http/MethodFactory.java",
+                    new File(outputDirectory, "com/sun/ts/tests/common/webclient/http/MethodFactory.java"));
 
-            inputFile = new File(tckDir, "src/com/sun/ts/tests/common/webclient/WebTestCase.java");
-            outputFile = new File(outputDirectory, "com/sun/ts/tests/common/webclient/WebTestCase.java");
-            copyFile(inputFile, outputFile);
+            copySourceFile("com/sun/ts/tests/common/webclient/WebTestCase.java",
+                    new File(outputDirectory, "com/sun/ts/tests/common/webclient/WebTestCase.java"));
 
-            inputFile = new File(tckDir, "src/com/sun/ts/tests/common/webclient/TestCase.java");
-            outputFile = new File(outputDirectory, "com/sun/ts/tests/common/webclient/TestCase.java");
-            copyFile(inputFile, outputFile);
+            copySourceFile("com/sun/ts/tests/common/webclient/TestCase.java",
+                    new File(outputDirectory, "com/sun/ts/tests/common/webclient/TestCase.java"));
 
-            inputFile = new File(tckDir, "src/com/sun/ts/tests/common/webclient/TestFailureException.java");
-            outputFile = new File(outputDirectory, "com/sun/ts/tests/common/webclient/TestFailureException.java");
-            copyFile(inputFile, outputFile);
+            copySourceFile("com/sun/ts/tests/common/webclient/TestFailureException.java",
+                    new File(outputDirectory, "com/sun/ts/tests/common/webclient/TestFailureException.java"));
             
-            inputFile = new File(tckDir, "src/com/sun/ts/tests/common/webclient/validation/ValidationFactory.java");
-            outputFile = new File(outputDirectory, "com/sun/ts/tests/common/webclient/validation/ValidationFactory.java");
-            copyFile(inputFile, outputFile);
+            copySourceFile("com/sun/ts/tests/common/webclient/validation/ValidationFactory.java",
+                    new File(outputDirectory, "com/sun/ts/tests/common/webclient/validation/ValidationFactory.java"));
             
-            inputFile = new File(tckDir, "src/com/sun/ts/tests/common/webclient/validation/ValidationStrategy.java");
-            outputFile = new File(outputDirectory, "com/sun/ts/tests/common/webclient/validation/ValidationStrategy.java");
-            copyFile(inputFile, outputFile);
+            copySourceFile("com/sun/ts/tests/common/webclient/validation/ValidationStrategy.java",
+                    new File(outputDirectory, "com/sun/ts/tests/common/webclient/validation/ValidationStrategy.java"));
             
-            inputFile = new File(tckDir, "src/com/sun/ts/lib/harness/ServiceEETest.java");
-            outputFile = new File(outputDirectory, "com/sun/ts/lib/harness/ServiceEETest.java");
-            copyFile(inputFile, outputFile);
+            copySourceFile("com/sun/ts/lib/harness/ServiceEETest.java",
+                    new File(outputDirectory, "com/sun/ts/lib/harness/ServiceEETest.java"));
         
         } catch (IOException ioe) {
-            ioe.printStackTrace(System.err);
+            error(ioe);
         }
     }
 
@@ -587,50 +1224,131 @@ public class Mammoth {
         if (!outputFile.getParentFile().exists()) {
             outputFile.getParentFile().mkdirs();
         }
-        Files.copy(inputFile.toPath(), outputFile.toPath());
+        Files.copy(inputFile.toPath(), outputFile.toPath(), getCopyOptions());
     }
 
     /**
-     * Deploy the wars.
+     * Get the copy options to use when copying a file.
+     *
+     * @return the copy options.
      */
-    private void deployWars() {
-        try ( Stream<Path> walk = Files.walk(tckDir.toPath())) {
+    private CopyOption[] getCopyOptions() {
+        if (reproducible) {
+            return new CopyOption[]{StandardCopyOption.COPY_ATTRIBUTES};
+        }
+        return new CopyOption[0];
+    }
 
-            List<File> files = walk
-                    .map(Path::toFile)
-                    .filter(file -> file.getName().toLowerCase().endsWith(".war"))
-                    .collect(Collectors.toList());
+    /**
+     * Set the last modified time of the file to the one of the zip entry, if
+     * the timestamps need to be preserved.
+     *
+     * @param file the file.
+     * @param entry the zip entry.
+     */
+    private void setLastModified(File file, ZipEntry entry) {
+        setLastModified(file, entry.getTime());
+    }
 
-            if (!webAppsDir.exists()) {
-                webAppsDir.mkdirs();
-            }
+    /**
+     * Set the last modified time of the file, if the timestamps need to be
+     * preserved.
+     *
+     * @param file the file.
+     * @param time the time, or -1 if it is not known.
+     */
+    private void setLastModified(File file, long time) {
+        if (reproducible && time != -1) {
+            file.setLastModified(time);
+        }
+    }
 
-            files.forEach(file -> {
-                File deployedFile = new File(webAppsDir, file.getName());
-                if (!deployedFile.exists()) {
-                    try {
-                        Files.copy(file.toPath(), deployedFile.toPath());
-                    } catch (IOException ioe) {
-                        ioe.printStackTrace(System.err);
-                    }
-                } else {
-                    System.err.println("Duplicate filename detected: " + file.getAbsolutePath());
+    /**
+     * Copy a TCK source file to output file and remember the mapping so the
+     * watch mode can update the output file when the source changes.
+     *
+     * @param sourcePath the path of the source relative to the TCK src dir.
+     * @param outputFile the output file.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void copySourceFile(String sourcePath, File outputFile) throws IOException {
+        copyFile(new File(tckDir, "src/" + sourcePath), outputFile);
+        sourceMapping.computeIfAbsent(sourcePath, key -> new LinkedHashSet<>()).add(outputFile);
+        entryProcessed(sourcePath);
+    }
+
+    /**
+     * Delete the given directory and everything in it.
+     *
+     * @param directory the directory.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void deleteDirectory(File directory) throws IOException {
+        if (directory.exists()) {
+            try ( Stream<Path> walk = Files.walk(directory.toPath())) {
+                List<Path> paths = walk
+                        .sorted(Comparator.reverseOrder())
+                        .collect(Collectors.toList());
+                for (Path path : paths) {
+                    Files.delete(path);
                 }
-            });
+            }
+        }
+    }
 
-        } catch (IOException ioe) {
-            ioe.printStackTrace(System.err);
+    /**
+     * Deploy the wars.
+     */
+    private void deployWars() {
+        List<File> files = new ArrayList<>();
+        if (catalog != null) {
+            catalog.getNames(TckCatalog.Kind.WAR).forEach(name -> files.add(getTckFile(name)));
+        } else if (tckDir.exists()) {
+            /*
+             * Without a catalog (e.g. a pre-populated TCK directory) fall
+             * back to looking for the WARs in the TCK directory.
+             */
+            try ( Stream<Path> walk = Files.walk(tckDir.toPath())) {
+                walk.map(Path::toFile)
+                        .filter(file -> file.getName().toLowerCase().endsWith(".war"))
+                        .sorted()
+                        .forEach(files::add);
+            } catch (IOException ioe) {
+                error(ioe);
+                return;
+            }
         }
+
+        if (!webAppsDir.exists()) {
+            webAppsDir.mkdirs();
+        }
+
+        files.forEach(file -> {
+            File deployedFile = new File(webAppsDir, file.getName());
+            if (!deployedFile.exists()) {
+                try {
+                    Files.copy(file.toPath(), deployedFile.toPath(), getCopyOptions());
+                    entryProcessed(file.getName());
+                } catch (IOException ioe) {
+                    error(ioe);
+                }
+            } else {
+                warning("Duplicate filename detected: " + file.getAbsolutePath());
+            }
+        });
     }
 
     /**
      * Download TCK.
      */
     private void downloadTck() {
-        try ( InputStream stream = tckUrl.openStream()) {
-            Files.copy(stream, Paths.get(tckZipFile));
-        } catch (IOException ex) {
-            ex.printStackTrace(System.err);
+        if (tckUrl == null) {
+            return;
+        }
+        try {
+            new RangedDownloader(tckUrl, new File(tckZipFile), downloadConnections, bufferPool).download();
+        } catch (IOException ioe) {
+            error(ioe);
         }
     }
 
@@ -638,20 +1356,44 @@ public class Mammoth {
      * Extract TCK.
      */
     private void extractTck() {
-        try ( ZipFile zipFile = new ZipFile(tckZipFile)) {
-            Enumeration<? extends ZipEntry> entries = zipFile.entries();
-            while (entries.hasMoreElements()) {
-                ZipEntry entry = entries.nextElement();
-                if (entry.isDirectory()) {
-                    File dir = new File(tckDir, entry.getName().substring(entry.getName().indexOf("/")));
-                    dir.mkdirs();
+        if (catalog == null) {
+            return;
+        }
+        /*
+         * The entries are read straight from the offsets in the catalog, so
+         * the central directory of the TCK zip file is not parsed again.
+         */
+        Inflater inflater = new Inflater(true);
+        try ( FileChannel channel = FileChannel.open(new File(tckZipFile).toPath(), StandardOpenOption.READ)) {
+            LocalDateTime newest = null;
+            for (int i = 0; i < catalog.size(); i++) {
+                String name = catalog.getName(i);
+                if (catalog.isDirectory(i)) {
+                    getTckFile(name).mkdirs();
                 } else {
-                    File file = new File(tckDir, entry.getName().substring(entry.getName().indexOf("/")));
-                    Files.copy(zipFile.getInputStream(entry), file.toPath());
+                    File file = getTckFile(name);
+                    try ( InputStream input = catalog.getInputStream(channel, inflater, i)) {
+                        bufferPool.copy(input, file);
+                    }
+                    setLastModified(file, catalog.getTime(i));
                 }
+                entryProcessed(name);
+                LocalDateTime timeLocal = catalog.getTimeLocal(i);
+                if (newest == null || timeLocal.isAfter(newest)) {
+                    newest = timeLocal;
+                }
+            }
+            /*
+             * The local time of the entries is used (as if it was UTC) so
+             * the output timestamp does not depend on the time zone.
+             */
+            if (newest != null) {
+                outputTimestamp = newest.truncatedTo(ChronoUnit.SECONDS).toInstant(ZoneOffset.UTC).toString();
             }
         } catch (IOException ioe) {
-            ioe.printStackTrace(System.err);
+            error(ioe);
+        } finally {
+            inflater.end();
         }
     }
 
@@ -663,49 +1405,51 @@ public class Mammoth {
      * @throws IOException when an I/O error occurs.
      */
     private void extractZipInputStream(ZipInputStream zipInput, String filePath) throws IOException {
-        try ( BufferedOutputStream bufferOutput = new BufferedOutputStream(new FileOutputStream(filePath))) {
-            byte[] bytesIn = new byte[8192];
-            int read;
-            while ((read = zipInput.read(bytesIn)) != -1) {
-                bufferOutput.write(bytesIn, 0, read);
-            }
-        }
+        bufferPool.copy(zipInput, new File(filePath));
     }
 
     /**
      * Explode the binary content from the WARs in the Maven structure.
      */
     public void explodeBinaryContentFromWars() {
-        File[] files = webAppsDir.listFiles();
-        for (File file : files) {
-            try {
-                File outputDirectory = new File(mavenDir,
-                        file.getName().substring(0, file.getName().toLowerCase().indexOf(".war"))
-                        + File.separator
-                        + "src/main/webapp");
-
-                if (!outputDirectory.exists()) {
-                    outputDirectory.mkdirs();
-                }
+        for (File file : getWarFiles()) {
+            explodeBinaryContentFromWar(file);
+        }
+    }
+
+    /**
+     * Explode the binary content from the given WAR in the Maven structure.
+     *
+     * @param file the WAR file.
+     */
+    private void explodeBinaryContentFromWar(File file) {
+        try {
+            EntryRules rules = getEntryRules();
+            File outputDirectory = new File(getModuleDir(file), "src/main/webapp");
+
+            if (!outputDirectory.exists()) {
+                outputDirectory.mkdirs();
+            }
 
-                try ( ZipInputStream zipInput = new ZipInputStream(new FileInputStream(file))) {
-                    ZipEntry entry = zipInput.getNextEntry();
-                    while (entry != null) {
+            try ( ZipInputStream zipInput = new ZipInputStream(new FileInputStream(file))) {
+                ZipEntry entry = zipInput.getNextEntry();
+                while (entry != null) {
+                    if (!entry.isDirectory() && rules.matches(EntryRules.Target.WEBAPP_RESOURCE, entry.getName())) {
                         String filePath = outputDirectory + File.separator + entry.getName();
-                        if (!entry.isDirectory() && !filePath.toLowerCase().endsWith(".class")) {
-                            File outputFile = new File(filePath);
-                            if (!outputFile.getParentFile().exists()) {
-                                outputFile.getParentFile().mkdirs();
-                            }
-                            extractZipInputStream(zipInput, filePath);
+                        File outputFile = new File(filePath);
+                        if (!outputFile.getParentFile().exists()) {
+                            outputFile.getParentFile().mkdirs();
                         }
-                        zipInput.closeEntry();
-                        entry = zipInput.getNextEntry();
+                        extractZipInputStream(zipInput, filePath);
+                        setLastModified(outputFile, entry);
+                        entryProcessed(entry.getName());
                     }
+                    zipInput.closeEntry();
+                    entry = zipInput.getNextEntry();
                 }
-            } catch (IOException ioe) {
-                ioe.printStackTrace(System.err);
             }
+        } catch (IOException ioe) {
+            error(ioe);
         }
     }
 
@@ -714,36 +1458,138 @@ public class Mammoth {
      */
     public void run() {
         if (!showHelp) {
-            downloadTck();
-            extractTck();
-            deployWars();
-            createMavenStructure();
-            explodeBinaryContentFromWars();
-            addJavaSources();
-            createJavaTestJarProject();
-            createTSHarnessJarProject();
-            createCommonJarProject();
-            createServletTckJarProject();
-            addTestJavaSources();
+            convert();
         } else {
             showHelp();
         }
     }
 
+    /**
+     * Convert the TCK to a set of Maven projects.
+     *
+     * @return the result.
+     */
+    public MammothResult convert() {
+        durations.clear();
+        entryCount = 0;
+        errors.clear();
+        runPhase(MammothPhase.DOWNLOAD, this::downloadTck);
+        runPhase(MammothPhase.CATALOG, this::openCatalog);
+        runPhase(MammothPhase.EXTRACT, this::extractTck);
+        runPhase(MammothPhase.DEPLOY, this::deployWars);
+        runPhase(MammothPhase.MAVEN_STRUCTURE, this::createMavenStructure);
+        runPhase(MammothPhase.EXPLODE, this::explodeBinaryContentFromWars);
+        runPhase(MammothPhase.JAVA_SOURCES, this::addJavaSources);
+        runPhase(MammothPhase.JAVATEST, this::createJavaTestJarProject);
+        runPhase(MammothPhase.TSHARNESS, this::createTSHarnessJarProject);
+        runPhase(MammothPhase.COMMON, this::createCommonJarProject);
+        runPhase(MammothPhase.SERVLETTCK, this::createServletTckJarProject);
+        runPhase(MammothPhase.TEST_JAVA_SOURCES, this::addTestJavaSources);
+        runPhase(MammothPhase.TOP_LEVEL_POM, this::createTopLevelPom);
+        if (verify) {
+            runPhase(MammothPhase.VERIFY, this::verifyModules);
+        }
+        if (watch) {
+            runPhase(MammothPhase.WATCH, this::watch);
+        }
+        return new MammothResult(new EnumMap<>(durations), entryCount, new EnumMap<>(errors));
+    }
+
+    /**
+     * Run a phase.
+     *
+     * @param phase the phase.
+     * @param runnable the runnable.
+     */
+    private void runPhase(MammothPhase phase, Runnable runnable) {
+        this.phase = phase;
+        listeners.forEach(listener -> listener.phaseStarted(phase));
+        long start = System.nanoTime();
+        try {
+            runnable.run();
+        } catch (RuntimeException re) {
+            error(re);
+        }
+        durations.put(phase, Duration.ofNanos(System.nanoTime() - start));
+        listeners.forEach(listener -> listener.phaseCompleted(phase));
+    }
+
+    /**
+     * Report an error in the current phase.
+     *
+     * @param exception the exception.
+     */
+    private void error(Exception exception) {
+        errors.computeIfAbsent(phase, key -> new ArrayList<>()).add(exception);
+        listeners.forEach(listener -> listener.errorOccurred(phase, exception));
+    }
+
+    /**
+     * Report a progress message in the current phase.
+     *
+     * @param message the message.
+     */
+    private void message(String message) {
+        listeners.forEach(listener -> listener.messageReported(phase, message));
+    }
+
+    /**
+     * Report a warning in the current phase.
+     *
+     * @param message the message.
+     */
+    private void warning(String message) {
+        listeners.forEach(listener -> listener.warningReported(phase, message));
+    }
+
+    /**
+     * Report an entry as processed in the current phase.
+     *
+     * @param entry the entry name.
+     */
+    private void entryProcessed(String entry) {
+        entryCount++;
+        for (MammothListener listener : listeners) {
+            listener.entryProcessed(phase, entry);
+        }
+    }
+
     /**
      * Parse the arguments.
      *
      * @param arguments the arguments.
      * @return the program.
+     * @throws IllegalArgumentException when an argument value is invalid.
      */
     public Mammoth parseArguments(String[] arguments) {
         for (int i = 0; i < arguments.length; i++) {
             if (arguments[i].equals("--mavenDir")) {
                 mavenDir = new File(arguments[i + 1]);
             }
+            if (arguments[i].equals("--bufferSize")) {
+                bufferPool = new BufferPool(Integer.parseInt(arguments[i + 1]));
+            }
+            if (arguments[i].equals("--downloadConnections")) {
+                downloadConnections = Integer.parseInt(arguments[i + 1]);
+            }
+            if (arguments[i].equals("--entryRules")) {
+                entryRulesFile = new File(arguments[i + 1]);
+            }
             if (arguments[i].equals("--help")) {
                 showHelp = true;
             }
+            if (arguments[i].equals("--jarArtifacts")) {
+                jarArtifacts = true;
+            }
+            if (arguments[i].equals("--reproducible")) {
+                reproducible = true;
+            }
+            if (arguments[i].equals("--shards")) {
+                shards = Integer.parseInt(arguments[i + 1]);
+            }
+            if (arguments[i].equals("--shardTimings")) {
+                shardTimings = new File(arguments[i + 1]);
+            }
             if (arguments[i].equals("--tckDir")) {
                 tckDir = new File(arguments[i + 1]);
             }
@@ -753,10 +1599,21 @@ public class Mammoth {
             if (arguments[i].equals("--tckUrl")) {
                 try {
                     tckUrl = new URL(arguments[i + 1]);
-                } catch (MalformedURLException ex) {
-                    ex.printStackTrace(System.err);
+                } catch (MalformedURLException mue) {
+                    throw new IllegalArgumentException("Invalid TCK URL: " + arguments[i + 1], mue);
+                }
+            }
+            if (arguments[i].equals("--verify")) {
+                verify = true;
+            }
+            if (arguments[i].equals("--verifyClasspath")) {
+                for (String path : arguments[i + 1].split(File.pathSeparator)) {
+                    verifyClasspath.add(new File(path));
                 }
             }
+            if (arguments[i].equals("--watch")) {
+                watch = true;
+            }
             if (arguments[i].equals("--webAppsDir")) {
                 webAppsDir = new File(arguments[i + 1]);
             }
@@ -764,6 +1621,187 @@ public class Mammoth {
         return this;
     }
 
+    /**
+     * Verify the generated modules compile.
+     */
+    private void verifyModules() {
+        try {
+            long start = System.currentTimeMillis();
+            Map<String, List<String>> results = new ModuleVerifier(mavenDir, verifyClasspath)
+                    .verify(getWarModuleNames());
+            int failed = 0;
+            for (Map.Entry<String, List<String>> result : results.entrySet()) {
+                entryProcessed(result.getKey());
+                if (!result.getValue().isEmpty()) {
+                    failed++;
+                    error(new VerificationException(result.getKey(), result.getValue()));
+                }
+            }
+            message("Verified " + results.size() + " modules, " + failed + " failed, in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException ioe) {
+            error(ioe);
+        }
+    }
+
+    /**
+     * Refresh the Maven module generated from the given WAR file.
+     *
+     * @param file the WAR file.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void refreshWar(File file) throws IOException {
+        if (file.exists()) {
+            watchedWarFiles.add(file);
+        } else {
+            watchedWarFiles.remove(file);
+        }
+        File moduleDir = getModuleDir(file);
+        boolean added = file.exists() && !new File(moduleDir, "src").exists();
+        moduleDir.mkdirs();
+        deleteDirectory(new File(moduleDir, "src"));
+        sourceMapping.values().forEach(outputFiles
+                -> outputFiles.removeIf(outputFile -> outputFile.toPath().startsWith(moduleDir.toPath())));
+        if (file.exists()) {
+            createMavenStructure();
+            explodeBinaryContentFromWar(file);
+            addJavaSources(file);
+            addTestJavaSources(file);
+            message("Updated module: " + moduleDir.getName());
+        } else {
+            message("Removed sources of module: " + moduleDir.getName());
+        }
+        if (added || !file.exists()) {
+            /*
+             * The set of WAR modules changed, so regenerate the module list
+             * (and the shard profiles) of the top-level POM.
+             */
+            writeTopLevelPom(new File(mavenDir, "pom.xml"));
+            message("Updated top-level POM");
+        }
+    }
+
+    /**
+     * Refresh the Maven module generated from the given TCK library.
+     *
+     * @param file the library file.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void refreshLibrary(File file) throws IOException {
+        String moduleName = file.getName().substring(0, file.getName().lastIndexOf(".jar"));
+        File resourcesDir = new File(mavenDir, moduleName + "/src/main/resources");
+        if (moduleName.equals("javatest")) {
+            deleteDirectory(resourcesDir);
+            createJavaTestJarProject();
+        } else if (moduleName.equals("tsharness")) {
+            deleteDirectory(resourcesDir);
+            createTSHarnessJarProject();
+        } else if (moduleName.equals("servlettck")) {
+            deleteDirectory(resourcesDir);
+            createServletTckJarProject();
+        } else {
+            return;
+        }
+        message("Updated module: " + moduleName);
+    }
+
+    /**
+     * Refresh the files generated from the given TCK source file.
+     *
+     * @param file the source file.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void refreshSource(File file) throws IOException {
+        Path sourcePath = new File(tckDir, "src").toPath().relativize(file.toPath());
+        Set<File> outputFiles = sourceMapping.get(sourcePath.toString().replace(File.separatorChar, '/'));
+        if (outputFiles != null && file.isFile()) {
+            for (File outputFile : outputFiles) {
+                Files.copy(file.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                message("Updated file: " + outputFile);
+            }
+        }
+    }
+
+    /**
+     * Register the given directory and all its sub directories with the
+     * watch service.
+     *
+     * @param watchService the watch service.
+     * @param directory the directory.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void registerRecursive(WatchService watchService, Path directory) throws IOException {
+        try ( Stream<Path> walk = Files.walk(directory)) {
+            List<Path> directories = walk
+                    .filter(Files::isDirectory)
+                    .collect(Collectors.toList());
+            for (Path path : directories) {
+                path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+        }
+    }
+
+    /**
+     * Watch the TCK sources, the TCK libraries and the web apps directory and
+     * update the affected files in the Maven structure when they change.
+     */
+    private void watch() {
+        Path sourceDir = new File(tckDir, "src").toPath();
+        Path libDir = new File(tckDir, "lib").toPath();
+        Path webAppsPath = webAppsDir.toPath();
+        try ( WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            registerRecursive(watchService, sourceDir);
+            libDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            webAppsPath.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            message("Watching " + sourceDir + ", " + libDir + " and " + webAppsPath);
+            while (true) {
+                /*
+                 * Collect the events that arrive in quick succession so a
+                 * file that is written in multiple steps is only processed
+                 * once.
+                 */
+                Set<Path> changes = new LinkedHashSet<>();
+                WatchKey key = watchService.take();
+                while (key != null) {
+                    Path directory = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            continue;
+                        }
+                        Path path = directory.resolve((Path) event.context());
+                        if (event.kind() == ENTRY_CREATE && path.startsWith(sourceDir)
+                                && Files.isDirectory(path)) {
+                            registerRecursive(watchService, path);
+                        } else {
+                            changes.add(path);
+                        }
+                    }
+                    key.reset();
+                    key = watchService.poll(50, TimeUnit.MILLISECONDS);
+                }
+                for (Path path : changes) {
+                    try {
+                        if (path.startsWith(sourceDir)) {
+                            refreshSource(path.toFile());
+                        } else if (path.getParent().equals(libDir)
+                                && path.toString().toLowerCase().endsWith(".jar")) {
+                            refreshLibrary(path.toFile());
+                        } else if (path.getParent().equals(webAppsPath)
+                                && path.toString().toLowerCase().endsWith(".war")) {
+                            refreshWar(path.toFile());
+                        }
+                    } catch (IOException ioe) {
+                        error(ioe);
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            error(ioe);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Main method.
      *
@@ -780,12 +1818,34 @@ public class Mammoth {
         System.out.println();
         System.out.println(
                 """
-                  --help              - Show this help
-                  --mavenDir <dir>    - The directory where to save the Maven structure
-                  --tckDir <dir>      - The directory to unzip TCK to
-                  --tckUrl <url>      - The location of the TCK to be fetched
-                  --tckZipFile <file> - The file location where to save the TCK zip file
-                  --webAppsDir <dir>  - The directory where to store the web apps
+                  --bufferSize <bytes>  - The size of the copy buffers (default 65536)
+                  --downloadConnections <n>
+                                        - The number of connections used to download
+                                          the TCK, if the server supports range
+                                          requests (default 4)
+                  --entryRules <file>   - The rules that classify the entries of the WARs
+                  --help                - Show this help
+                  --jarArtifacts        - Use the javatest, tsharness and servlettck jars
+                                          as module artifacts instead of exploding them
+                  --mavenDir <dir>      - The directory where to save the Maven structure
+                  --reproducible        - Preserve the timestamps of the TCK entries and
+                                          generate reproducible, build cache ready POMs
+                  --shards <n>          - Split the WAR modules into n shard profiles
+                                          balanced by the estimated cost of their tests
+                  --shardTimings <file> - Properties file with the test time (in seconds)
+                                          per module of an earlier run, used for the
+                                          cost estimate of the shards
+                  --tckDir <dir>        - The directory to unzip TCK to
+                  --tckUrl <url>        - The location of the TCK to be fetched
+                  --tckZipFile <file>   - The file location where to save the TCK zip file
+                  --verify              - Compile the generated modules in-process to
+                                          verify the conversion
+                  --verifyClasspath <path>
+                                        - Extra classpath used when verifying, e.g. the
+                                          Jakarta EE API and commons-httpclient jars
+                  --watch               - Keep watching the TCK and web apps and update
+                                          the Maven structure when they change
+                  --webAppsDir <dir>    - The directory where to store the web apps
                 """);
     }
 
@@ -797,42 +1857,38 @@ public class Mammoth {
      * remaining Java files from the actual TCK src directory into it as well.
      */
     private void addTestJavaSources() {
-        File[] files = webAppsDir.listFiles();
-        for (File file : files) {
-            try {
-                File outputDirectory = new File(mavenDir,
-                        file.getName().substring(0, file.getName().toLowerCase().indexOf(".war"))
-                        + File.separator
-                        + "src/test/java");
-
-                if (!outputDirectory.exists()) {
-                    outputDirectory.mkdirs();
-                }
+        for (File file : getWarFiles()) {
+            addTestJavaSources(file);
+        }
+    }
 
-                try ( ZipInputStream zipInput = new ZipInputStream(new FileInputStream(file))) {
-                    ZipEntry entry = zipInput.getNextEntry();
-                    while (entry != null) {
-                        String filePath = outputDirectory + File.separator + entry.getName();
-                        if (!entry.isDirectory() && filePath.toLowerCase().endsWith(".class")
-                                && !filePath.contains("$")) {
-                            String classFilePath = filePath.substring(0, filePath.lastIndexOf(".class"));
-                            classFilePath = classFilePath.substring(
-                                    classFilePath.lastIndexOf("WEB-INF/classes/")
-                                    + "WEB-INF/classes/".length());
-                            File classFile = new File(tckDir, "src/" + classFilePath + ".java");
-                            File outputFile = new File(outputDirectory, classFilePath + ".java");
-                            if (!outputFile.getParentFile().exists()) {
-                                outputFile.getParentFile().mkdirs();
-                            }
-                            Files.copy(classFile.toPath(), outputFile.toPath());
-                        }
-                        zipInput.closeEntry();
-                        entry = zipInput.getNextEntry();
+    /**
+     * Add the test Java sources for the given WAR file.
+     *
+     * @param file the WAR file.
+     */
+    private void addTestJavaSources(File file) {
+        try {
+            EntryRules rules = getEntryRules();
+            File outputDirectory = new File(getModuleDir(file), "src/test/java");
+
+            if (!outputDirectory.exists()) {
+                outputDirectory.mkdirs();
+            }
+
+            try ( ZipInputStream zipInput = new ZipInputStream(new FileInputStream(file))) {
+                ZipEntry entry = zipInput.getNextEntry();
+                while (entry != null) {
+                    if (!entry.isDirectory() && rules.matches(EntryRules.Target.TEST_SOURCE, entry.getName())) {
+                        String sourcePath = getSourcePath(entry.getName());
+                        copySourceFile(sourcePath, new File(outputDirectory, sourcePath));
                     }
+                    zipInput.closeEntry();
+                    entry = zipInput.getNextEntry();
                 }
-            } catch (IOException ioe) {
-                ioe.printStackTrace(System.err);
             }
+        } catch (IOException ioe) {
+            error(ioe);
         }
     }
 
@@ -848,6 +1904,10 @@ public class Mammoth {
             // 1. create the servlettck.jar project directory.
             File servletTckProjectDir = new File(mavenDir, "servlettck");
             servletTckProjectDir.mkdir();
+            if (jarArtifacts) {
+                createJarArtifactProject(servletTckProjectDir, getLibraryJar("servlettck.jar"));
+                return;
+            }
             // 2. create POM file.
             File pomFile = new File(servletTckProjectDir, "pom.xml");
             if (pomFile.createNewFile()) {
@@ -897,7 +1957,7 @@ public class Mammoth {
             }
 
             try ( ZipInputStream zipInput = new ZipInputStream(
-                    new FileInputStream(new File(tckDir, "lib/servlettck.jar")))) {
+                    new FileInputStream(getLibraryJar("servlettck.jar")))) {
                 ZipEntry entry = zipInput.getNextEntry();
                 while (entry != null) {
                     if (!entry.isDirectory()) {
@@ -905,7 +1965,9 @@ public class Mammoth {
                         if (!outputFile.getParentFile().exists()) {
                             outputFile.getParentFile().mkdirs();
                         }
-                        Files.copy(zipInput, outputFile.toPath());
+                        bufferPool.copy(zipInput, outputFile);
+                        setLastModified(outputFile, entry);
+                        entryProcessed(entry.getName());
                     }
                     zipInput.closeEntry();
                     entry = zipInput.getNextEntry();
@@ -913,7 +1975,7 @@ public class Mammoth {
             }
 
         } catch (IOException ioe) {
-            ioe.printStackTrace(System.err);
+            error(ioe);
         }
     }
 }
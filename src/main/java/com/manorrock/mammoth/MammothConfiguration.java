@@ -0,0 +1,602 @@
+/*
+ * Copyright (c) 2002-2023 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.manorrock.mammoth;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The immutable configuration of a conversion.
+ *
+ * <p>
+ * Use {@link #builder()} to create one, for example:
+ * </p>
+ * <pre>
+ * MammothResult result = new Mammoth(MammothConfiguration.builder()
+ *         .tckUrl(url)
+ *         .mavenDir(new File("target/maven"))
+ *         .listener(listener)
+ *         .build()).convert();
+ * </pre>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public final class MammothConfiguration {
+
+    /**
+     * Stores the buffer size.
+     */
+    private final int bufferSize;
+
+    /**
+     * Stores the number of download connections.
+     */
+    private final int downloadConnections;
+
+    /**
+     * Stores the entry rules file.
+     */
+    private final File entryRulesFile;
+
+    /**
+     * Stores the jar artifacts flag.
+     */
+    private final boolean jarArtifacts;
+
+    /**
+     * Stores the listeners.
+     */
+    private final List<MammothListener> listeners;
+
+    /**
+     * Stores the Maven directory.
+     */
+    private final File mavenDir;
+
+    /**
+     * Stores the reproducible flag.
+     */
+    private final boolean reproducible;
+
+    /**
+     * Stores the number of shards.
+     */
+    private final int shards;
+
+    /**
+     * Stores the shard timings file.
+     */
+    private final File shardTimings;
+
+    /**
+     * Stores the TCK directory.
+     */
+    private final File tckDir;
+
+    /**
+     * Stores the TCK URL.
+     */
+    private final URL tckUrl;
+
+    /**
+     * Stores the TCK zip file.
+     */
+    private final String tckZipFile;
+
+    /**
+     * Stores the verify flag.
+     */
+    private final boolean verify;
+
+    /**
+     * Stores the extra classpath used for verifying.
+     */
+    private final List<File> verifyClasspath;
+
+    /**
+     * Stores the watch flag.
+     */
+    private final boolean watch;
+
+    /**
+     * Stores the webapps directory.
+     */
+    private final File webAppsDir;
+
+    /**
+     * Constructor.
+     *
+     * @param builder the builder.
+     */
+    private MammothConfiguration(Builder builder) {
+        this.bufferSize = builder.bufferSize;
+        this.downloadConnections = builder.downloadConnections;
+        this.entryRulesFile = builder.entryRulesFile;
+        this.jarArtifacts = builder.jarArtifacts;
+        this.listeners = Collections.unmodifiableList(new ArrayList<>(builder.listeners));
+        this.mavenDir = builder.mavenDir;
+        this.reproducible = builder.reproducible;
+        this.shards = builder.shards;
+        this.shardTimings = builder.shardTimings;
+        this.tckDir = builder.tckDir;
+        this.tckUrl = builder.tckUrl;
+        this.tckZipFile = builder.tckZipFile;
+        this.verify = builder.verify;
+        this.verifyClasspath = Collections.unmodifiableList(new ArrayList<>(builder.verifyClasspath));
+        this.watch = builder.watch;
+        this.webAppsDir = builder.webAppsDir;
+    }
+
+    /**
+     * Create a builder.
+     *
+     * @return the builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the buffer size.
+     *
+     * @return the buffer size.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Get the number of download connections.
+     *
+     * @return the number of download connections.
+     */
+    public int getDownloadConnections() {
+        return downloadConnections;
+    }
+
+    /**
+     * Get the entry rules file.
+     *
+     * @return the entry rules file, or null for the default rules.
+     */
+    public File getEntryRulesFile() {
+        return entryRulesFile;
+    }
+
+    /**
+     * Get the listeners.
+     *
+     * @return the listeners.
+     */
+    public List<MammothListener> getListeners() {
+        return listeners;
+    }
+
+    /**
+     * Get the Maven directory.
+     *
+     * @return the Maven directory.
+     */
+    public File getMavenDir() {
+        return mavenDir;
+    }
+
+    /**
+     * Get the number of shards.
+     *
+     * @return the number of shards.
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Get the shard timings file.
+     *
+     * @return the shard timings file.
+     */
+    public File getShardTimings() {
+        return shardTimings;
+    }
+
+    /**
+     * Get the TCK directory.
+     *
+     * @return the TCK directory.
+     */
+    public File getTckDir() {
+        return tckDir;
+    }
+
+    /**
+     * Get the TCK URL.
+     *
+     * @return the TCK URL.
+     */
+    public URL getTckUrl() {
+        return tckUrl;
+    }
+
+    /**
+     * Get the TCK zip file.
+     *
+     * @return the TCK zip file.
+     */
+    public String getTckZipFile() {
+        return tckZipFile;
+    }
+
+    /**
+     * Get the extra classpath used for verifying.
+     *
+     * @return the extra classpath.
+     */
+    public List<File> getVerifyClasspath() {
+        return verifyClasspath;
+    }
+
+    /**
+     * Get the webapps directory.
+     *
+     * @return the webapps directory.
+     */
+    public File getWebAppsDir() {
+        return webAppsDir;
+    }
+
+    /**
+     * Is jar artifacts.
+     *
+     * @return the jar artifacts flag.
+     */
+    public boolean isJarArtifacts() {
+        return jarArtifacts;
+    }
+
+    /**
+     * Is reproducible.
+     *
+     * @return the reproducible flag.
+     */
+    public boolean isReproducible() {
+        return reproducible;
+    }
+
+    /**
+     * Is verify.
+     *
+     * @return the verify flag.
+     */
+    public boolean isVerify() {
+        return verify;
+    }
+
+    /**
+     * Is watch.
+     *
+     * @return the watch flag.
+     */
+    public boolean isWatch() {
+        return watch;
+    }
+
+    /**
+     * The builder of a configuration.
+     */
+    public static final class Builder {
+
+        /**
+         * Stores the buffer size.
+         */
+        private int bufferSize = BufferPool.DEFAULT_BUFFER_SIZE;
+
+        /**
+         * Stores the number of download connections.
+         */
+        private int downloadConnections = 4;
+
+        /**
+         * Stores the entry rules file.
+         */
+        private File entryRulesFile;
+
+        /**
+         * Stores the jar artifacts flag.
+         */
+        private boolean jarArtifacts;
+
+        /**
+         * Stores the listeners.
+         */
+        private final List<MammothListener> listeners = new ArrayList<>();
+
+        /**
+         * Stores the Maven directory.
+         */
+        private File mavenDir = new File("maven");
+
+        /**
+         * Stores the reproducible flag.
+         */
+        private boolean reproducible;
+
+        /**
+         * Stores the number of shards.
+         */
+        private int shards;
+
+        /**
+         * Stores the shard timings file.
+         */
+        private File shardTimings;
+
+        /**
+         * Stores the TCK directory.
+         */
+        private File tckDir = new File("tck");
+
+        /**
+         * Stores the TCK URL.
+         */
+        private URL tckUrl;
+
+        /**
+         * Stores the TCK zip file.
+         */
+        private String tckZipFile = "tck.zip";
+
+        /**
+         * Stores the verify flag.
+         */
+        private boolean verify;
+
+        /**
+         * Stores the extra classpath used for verifying.
+         */
+        private final List<File> verifyClasspath = new ArrayList<>();
+
+        /**
+         * Stores the watch flag.
+         */
+        private boolean watch;
+
+        /**
+         * Stores the webapps directory.
+         */
+        private File webAppsDir = new File("webapps");
+
+        /**
+         * Constructor.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Set the size of the copy buffers.
+         *
+         * @param bufferSize the buffer size.
+         * @return the builder.
+         */
+        public Builder bufferSize(int bufferSize) {
+            if (bufferSize <= 0) {
+                throw new IllegalArgumentException("Buffer size must be positive");
+            }
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Set the number of connections used to download the TCK, if the
+         * server supports range requests.
+         *
+         * @param downloadConnections the number of download connections.
+         * @return the builder.
+         */
+        public Builder downloadConnections(int downloadConnections) {
+            if (downloadConnections <= 0) {
+                throw new IllegalArgumentException("Number of download connections must be positive");
+            }
+            this.downloadConnections = downloadConnections;
+            return this;
+        }
+
+        /**
+         * Set the file with the rules that classify the entries of the WARs,
+         * instead of the default rules.
+         *
+         * @param entryRulesFile the entry rules file.
+         * @return the builder.
+         */
+        public Builder entryRulesFile(File entryRulesFile) {
+            this.entryRulesFile = entryRulesFile;
+            return this;
+        }
+
+        /**
+         * Set whether to use the javatest, tsharness and servlettck jars as
+         * module artifacts instead of exploding them.
+         *
+         * @param jarArtifacts the jar artifacts flag.
+         * @return the builder.
+         */
+        public Builder jarArtifacts(boolean jarArtifacts) {
+            this.jarArtifacts = jarArtifacts;
+            return this;
+        }
+
+        /**
+         * Add a listener.
+         *
+         * @param listener the listener.
+         * @return the builder.
+         */
+        public Builder listener(MammothListener listener) {
+            this.listeners.add(listener);
+            return this;
+        }
+
+        /**
+         * Set the directory where to save the Maven structure.
+         *
+         * @param mavenDir the Maven directory.
+         * @return the builder.
+         */
+        public Builder mavenDir(File mavenDir) {
+            this.mavenDir = mavenDir;
+            return this;
+        }
+
+        /**
+         * Set whether to preserve timestamps and generate reproducible, build
+         * cache ready POMs.
+         *
+         * @param reproducible the reproducible flag.
+         * @return the builder.
+         */
+        public Builder reproducible(boolean reproducible) {
+            this.reproducible = reproducible;
+            return this;
+        }
+
+        /**
+         * Set the number of shard profiles to generate (0 for none).
+         *
+         * @param shards the number of shards.
+         * @return the builder.
+         */
+        public Builder shards(int shards) {
+            if (shards < 0) {
+                throw new IllegalArgumentException("Number of shards cannot be negative");
+            }
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * Set the shard timings file.
+         *
+         * @param shardTimings the shard timings file.
+         * @return the builder.
+         */
+        public Builder shardTimings(File shardTimings) {
+            this.shardTimings = shardTimings;
+            return this;
+        }
+
+        /**
+         * Set the directory to unzip the TCK to.
+         *
+         * @param tckDir the TCK directory.
+         * @return the builder.
+         */
+        public Builder tckDir(File tckDir) {
+            this.tckDir = tckDir;
+            return this;
+        }
+
+        /**
+         * Set the location of the TCK to be fetched.
+         *
+         * @param tckUrl the TCK URL.
+         * @return the builder.
+         */
+        public Builder tckUrl(URL tckUrl) {
+            this.tckUrl = tckUrl;
+            return this;
+        }
+
+        /**
+         * Set the file location where to save the TCK zip file.
+         *
+         * @param tckZipFile the TCK zip file.
+         * @return the builder.
+         */
+        public Builder tckZipFile(String tckZipFile) {
+            this.tckZipFile = tckZipFile;
+            return this;
+        }
+
+        /**
+         * Set whether to compile the generated modules in-process to verify
+         * the conversion.
+         *
+         * @param verify the verify flag.
+         * @return the builder.
+         */
+        public Builder verify(boolean verify) {
+            this.verify = verify;
+            return this;
+        }
+
+        /**
+         * Add an entry to the extra classpath used for verifying.
+         *
+         * @param file the jar file or directory.
+         * @return the builder.
+         */
+        public Builder verifyClasspath(File file) {
+            this.verifyClasspath.add(file);
+            return this;
+        }
+
+        /**
+         * Set whether to keep watching for changes after the conversion. Note
+         * the conversion then only returns when its thread is interrupted.
+         *
+         * @param watch the watch flag.
+         * @return the builder.
+         */
+        public Builder watch(boolean watch) {
+            this.watch = watch;
+            return this;
+        }
+
+        /**
+         * Set the directory where to store the web apps.
+         *
+         * @param webAppsDir the webapps directory.
+         * @return the builder.
+         */
+        public Builder webAppsDir(File webAppsDir) {
+            this.webAppsDir = webAppsDir;
+            return this;
+        }
+
+        /**
+         * Build the configuration.
+         *
+         * @return the configuration.
+         */
+        public MammothConfiguration build() {
+            return new MammothConfiguration(this);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2002-2023 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.manorrock.mammoth;
+
+/**
+ * The listener that receives progress callbacks of a conversion.
+ *
+ * <p>
+ * The callbacks are made on the thread that runs the conversion, so
+ * implementations should return quickly.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public interface MammothListener {
+
+    /**
+     * Called when a phase is started.
+     *
+     * @param phase the phase.
+     */
+    default void phaseStarted(MammothPhase phase) {
+    }
+
+    /**
+     * Called when a phase is completed.
+     *
+     * @param phase the phase.
+     */
+    default void phaseCompleted(MammothPhase phase) {
+    }
+
+    /**
+     * Called when an entry (a zip entry or a file) has been processed.
+     *
+     * @param phase the phase.
+     * @param entry the entry name.
+     */
+    default void entryProcessed(MammothPhase phase, String entry) {
+    }
+
+    /**
+     * Called with a progress message, e.g. a module updated in watch mode.
+     *
+     * @param phase the phase.
+     * @param message the message.
+     */
+    default void messageReported(MammothPhase phase, String message) {
+    }
+
+    /**
+     * Called with a warning that does not stop the current item, e.g. a
+     * duplicate WAR file name.
+     *
+     * @param phase the phase.
+     * @param message the message.
+     */
+    default void warningReported(MammothPhase phase, String message) {
+    }
+
+    /**
+     * Called when an error occurs. The conversion continues with the next
+     * item or phase.
+     *
+     * @param phase the phase.
+     * @param exception the exception.
+     */
+    default void errorOccurred(MammothPhase phase, Exception exception) {
+    }
+}
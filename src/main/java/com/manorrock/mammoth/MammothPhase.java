@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2002-2023 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.manorrock.mammoth;
+
+/**
+ * The phases of a conversion, in the order they are run.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public enum MammothPhase {
+
+    /**
+     * Download the TCK zip file.
+     */
+    DOWNLOAD,
+
+    /**
+     * Open (or build) the catalog of the TCK zip file.
+     */
+    CATALOG,
+
+    /**
+     * Extract the TCK zip file.
+     */
+    EXTRACT,
+
+    /**
+     * Deploy the WARs into the web apps directory.
+     */
+    DEPLOY,
+
+    /**
+     * Create the Maven modules for the WARs.
+     */
+    MAVEN_STRUCTURE,
+
+    /**
+     * Explode the binary content of the WARs.
+     */
+    EXPLODE,
+
+    /**
+     * Add the Java sources of the WARs.
+     */
+    JAVA_SOURCES,
+
+    /**
+     * Create the javatest module.
+     */
+    JAVATEST,
+
+    /**
+     * Create the tsharness module.
+     */
+    TSHARNESS,
+
+    /**
+     * Create the common module.
+     */
+    COMMON,
+
+    /**
+     * Create the servlettck module.
+     */
+    SERVLETTCK,
+
+    /**
+     * Add the test Java sources of the WARs.
+     */
+    TEST_JAVA_SOURCES,
+
+    /**
+     * Create the top-level POM.
+     */
+    TOP_LEVEL_POM,
+
+    /**
+     * Compile the generated modules to verify the conversion.
+     */
+    VERIFY,
+
+    /**
+     * Watch for changes and update the Maven structure.
+     */
+    WATCH
+}
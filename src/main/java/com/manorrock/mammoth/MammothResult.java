@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2002-2023 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.manorrock.mammoth;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of a conversion.
+ *
+ * <p>
+ * It is returned by {@link Mammoth#convert()} and holds the durations and
+ * the errors of the phases that were run.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public final class MammothResult {
+
+    /**
+     * Stores the durations by phase.
+     */
+    private final Map<MammothPhase, Duration> durations;
+
+    /**
+     * Stores the number of processed entries.
+     */
+    private final long entryCount;
+
+    /**
+     * Stores the errors by phase.
+     */
+    private final Map<MammothPhase, List<Exception>> errors;
+
+    /**
+     * Constructor.
+     *
+     * @param durations the durations by phase.
+     * @param entryCount the number of processed entries.
+     * @param errors the errors by phase.
+     */
+    MammothResult(Map<MammothPhase, Duration> durations, long entryCount,
+            Map<MammothPhase, List<Exception>> errors) {
+        this.durations = Collections.unmodifiableMap(durations);
+        this.entryCount = entryCount;
+        this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * Get the durations of the phases that were run.
+     *
+     * @return the durations by phase.
+     */
+    public Map<MammothPhase, Duration> getDurations() {
+        return durations;
+    }
+
+    /**
+     * Get the number of processed entries.
+     *
+     * @return the number of processed entries.
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Get the errors that occurred.
+     *
+     * @return the errors by phase.
+     */
+    public Map<MammothPhase, List<Exception>> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Is the conversion successful, that is did no errors occur.
+     *
+     * @return true if successful, false otherwise.
+     */
+    public boolean isSuccessful() {
+        return errors.isEmpty();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2002-2023 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.manorrock.mammoth;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/**
+ * The verifier that compiles the generated modules in-process.
+ *
+ * <p>
+ * The shared classpath (the extra classpath, the javatest, tsharness and
+ * servlettck modules and the compiled common module) is built
+ * once. The WAR modules are then compiled in parallel, each worker thread
+ * reusing its own file manager as javac file managers are not thread-safe.
+ * The classes are written to <code>target/verify-classes</code> and
+ * <code>target/verify-test-classes</code> of each module.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class ModuleVerifier {
+
+    /**
+     * Stores the compiler options.
+     */
+    private static final List<String> OPTIONS = List.of(
+            "--release", "11", "-encoding", "UTF-8", "-proc:none", "-nowarn");
+
+    /**
+     * Stores the shared classpath.
+     */
+    private final List<File> classpath;
+
+    /**
+     * Stores the compiler.
+     */
+    private final JavaCompiler compiler;
+
+    /**
+     * Stores the file managers.
+     */
+    private final List<StandardJavaFileManager> fileManagers = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Stores the file manager of the current thread.
+     */
+    private final ThreadLocal<StandardJavaFileManager> fileManager;
+
+    /**
+     * Stores the Maven directory.
+     */
+    private final File mavenDir;
+
+    /**
+     * Constructor.
+     *
+     * @param mavenDir the Maven directory.
+     * @param extraClasspath the extra classpath (e.g. the Jakarta EE API).
+     * @throws IOException when no Java compiler is available.
+     */
+    ModuleVerifier(File mavenDir, List<File> extraClasspath) throws IOException {
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IOException("No Java compiler available, please run with a JDK");
+        }
+        this.mavenDir = mavenDir;
+        this.classpath = new ArrayList<>(extraClasspath);
+        this.fileManager = ThreadLocal.withInitial(() -> {
+            StandardJavaFileManager manager = compiler.getStandardFileManager(null, Locale.ROOT, null);
+            fileManagers.add(manager);
+            return manager;
+        });
+        for (String module : new String[]{"javatest", "tsharness", "servlettck"}) {
+            File jarFile = new File(mavenDir, module + "/" + module + ".jar");
+            File resourcesDir = new File(mavenDir, module + "/src/main/resources");
+            if (jarFile.exists()) {
+                classpath.add(jarFile);
+            } else if (resourcesDir.exists()) {
+                classpath.add(resourcesDir);
+            }
+        }
+    }
+
+    /**
+     * Verify the common module and the given WAR modules.
+     *
+     * @param moduleNames the WAR module names.
+     * @return the compile errors by module name, empty for modules that
+     * compile.
+     * @throws IOException when an I/O error occurs.
+     */
+    Map<String, List<String>> verify(List<String> moduleNames) throws IOException {
+        Map<String, List<String>> results = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            results.put("common", verifyModule("common"));
+            classpath.add(new File(mavenDir, "common/target/verify-classes"));
+
+            Map<String, Future<List<String>>> futures = new LinkedHashMap<>();
+            for (String moduleName : moduleNames) {
+                futures.put(moduleName, executor.submit(() -> verifyModule(moduleName)));
+            }
+            for (Map.Entry<String, Future<List<String>>> entry : futures.entrySet()) {
+                results.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException(ee.getCause());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Verification interrupted", ie);
+        } finally {
+            executor.shutdownNow();
+            for (StandardJavaFileManager manager : fileManagers) {
+                manager.close();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Verify a module by compiling its main and test sources.
+     *
+     * @param moduleName the module name.
+     * @return the compile errors.
+     * @throws IOException when an I/O error occurs.
+     */
+    private List<String> verifyModule(String moduleName) throws IOException {
+        File moduleDir = new File(mavenDir, moduleName);
+        File classesDir = new File(moduleDir, "target/verify-classes");
+        List<String> errors = new ArrayList<>();
+        compile(new File(moduleDir, "src/main/java"), classpath, classesDir, errors);
+        if (errors.isEmpty()) {
+            List<File> testClasspath = new ArrayList<>(classpath);
+            testClasspath.add(classesDir);
+            compile(new File(moduleDir, "src/test/java"), testClasspath,
+                    new File(moduleDir, "target/verify-test-classes"), errors);
+        }
+        return errors;
+    }
+
+    /**
+     * Compile the sources in the given directory.
+     *
+     * @param sourceDir the source directory.
+     * @param classpath the classpath.
+     * @param outputDir the output directory.
+     * @param errors the list to add the compile errors to.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void compile(File sourceDir, List<File> classpath, File outputDir, List<String> errors) throws IOException {
+        if (!sourceDir.exists()) {
+            return;
+        }
+        List<File> sources;
+        try ( Stream<Path> walk = Files.walk(sourceDir.toPath())) {
+            sources = walk
+                    .filter(path -> path.toString().endsWith(".java"))
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        }
+        if (sources.isEmpty()) {
+            return;
+        }
+        outputDir.mkdirs();
+        StandardJavaFileManager manager = fileManager.get();
+        manager.setLocation(StandardLocation.CLASS_PATH, classpath);
+        manager.setLocation(StandardLocation.CLASS_OUTPUT, List.of(outputDir));
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        compiler.getTask(null, manager, diagnostics, OPTIONS, null,
+                manager.getJavaFileObjectsFromFiles(sources)).call();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add((diagnostic.getSource() != null ? diagnostic.getSource().getName() : "")
+                        + ":" + diagnostic.getLineNumber() + ": " + diagnostic.getMessage(Locale.ROOT));
+            }
+        }
+    }
+}
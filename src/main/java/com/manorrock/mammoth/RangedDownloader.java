@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2002-2023 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.manorrock.mammoth;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The downloader that fetches a file over multiple connections using HTTP
+ * range requests.
+ *
+ * <p>
+ * The file is preallocated and every segment is written at its own position
+ * using positional FileChannel writes. The progress of the segments is kept
+ * in a <code>.parts</code> file next to the file, so an interrupted download
+ * resumes where each segment left off. The segment requests carry the ETag
+ * or Last-Modified of the file in an <code>If-Range</code> header, so a file
+ * that changed in the meantime fails the download instead of being mixed
+ * with the earlier one. If the server sends neither header, an interrupted
+ * download starts over. If the server does not support range
+ * requests (or the URL is not an HTTP URL) the file is downloaded with a
+ * single sequential stream.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class RangedDownloader {
+
+    /**
+     * Stores the minimum size of a segment.
+     */
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    /**
+     * Stores the number of bytes after which the progress is saved.
+     */
+    private static final long PROGRESS_INTERVAL = 1024 * 1024;
+
+    /**
+     * Stores the connect and read timeout in milliseconds.
+     */
+    private static final int TIMEOUT = 60 * 1000;
+
+    /**
+     * Stores the number of attempts per segment.
+     */
+    private static final int ATTEMPTS = 3;
+
+    /**
+     * Stores the buffer pool.
+     */
+    private final BufferPool bufferPool;
+
+    /**
+     * Stores the number of connections.
+     */
+    private final int connections;
+
+    /**
+     * Stores the file.
+     */
+    private final File file;
+
+    /**
+     * Stores the parts file.
+     */
+    private final File partsFile;
+
+    /**
+     * Stores the URL.
+     */
+    private final URL url;
+
+    /**
+     * Constructor.
+     *
+     * @param url the URL.
+     * @param file the file.
+     * @param connections the number of connections.
+     * @param bufferPool the buffer pool.
+     */
+    RangedDownloader(URL url, File file, int connections, BufferPool bufferPool) {
+        this.url = url;
+        this.file = file;
+        this.partsFile = new File(file.getPath() + ".parts");
+        this.connections = connections;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Download the file.
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    void download() throws IOException {
+        if (file.exists() && !partsFile.exists()) {
+            throw new FileAlreadyExistsException(file.toString());
+        }
+        if (connections > 1 && url.getProtocol().startsWith("http")) {
+            /*
+             * Probe with a single byte range request, which also tells us
+             * the total length in the Content-Range response header.
+             */
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setRequestProperty("Range", "bytes=0-0");
+            try {
+                String contentRange = connection.getHeaderField("Content-Range");
+                if (connection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL
+                        && contentRange != null && contentRange.startsWith("bytes ")
+                        && !contentRange.endsWith("/*")) {
+                    long length = Long.parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1));
+                    /*
+                     * If-Range only accepts a strong ETag, so fall back to
+                     * Last-Modified for a weak one.
+                     */
+                    String validator = connection.getHeaderField("ETag");
+                    if (validator == null || validator.startsWith("W/")) {
+                        validator = connection.getHeaderField("Last-Modified");
+                    }
+                    downloadSegments(length, validator);
+                    return;
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+        Files.deleteIfExists(partsFile.toPath());
+        Files.deleteIfExists(file.toPath());
+        try ( InputStream input = url.openStream()) {
+            bufferPool.copy(input, file);
+        }
+    }
+
+    /**
+     * Download the file in segments.
+     *
+     * @param length the length of the file.
+     * @param validator the validator (ETag or Last-Modified) of the file, or
+     * null if the server sent neither, in which case an earlier download is
+     * not resumed.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void downloadSegments(long length, String validator) throws IOException {
+        long[][] segments = validator != null ? readProgress(length, validator) : null;
+        if (segments == null) {
+            int count = (int) Math.max(1, Math.min(connections, length / MIN_SEGMENT_SIZE));
+            segments = new long[count][3];
+            for (int i = 0; i < count; i++) {
+                segments[i][0] = length * i / count;
+                segments[i][1] = length * (i + 1) / count;
+            }
+            try ( RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(length);
+            }
+            writeProgress(length, validator != null ? validator : "", segments);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(segments.length);
+        try ( FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+                FileChannel partsChannel = FileChannel.open(partsFile.toPath(), StandardOpenOption.WRITE)) {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < segments.length; i++) {
+                long[] segment = segments[i];
+                long progressPosition = getProgressPosition(validator != null ? validator : "", i);
+                futures.add(executor.submit(() -> {
+                    downloadSegment(segment, validator, channel, partsChannel, progressPosition);
+                    return null;
+                }));
+            }
+            /*
+             * Wait for all the segments before reporting a failure, so no
+             * segment is still requesting or writing once this returns.
+             */
+            ExecutionException failure = null;
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ee) {
+                    if (failure == null) {
+                        failure = ee;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException(ee.getCause());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Download interrupted", ie);
+        } finally {
+            executor.shutdownNow();
+        }
+        Files.delete(partsFile.toPath());
+    }
+
+    /**
+     * Download a segment, retrying from where it left off on failure.
+     *
+     * @param segment the segment (start, end and number of bytes done).
+     * @param validator the validator of the file, or null.
+     * @param channel the file channel.
+     * @param partsChannel the parts file channel.
+     * @param progressPosition the position of the segment progress in the
+     * parts file.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void downloadSegment(long[] segment, String validator, FileChannel channel,
+            FileChannel partsChannel, long progressPosition) throws IOException {
+        ByteBuffer progress = ByteBuffer.allocate(Long.BYTES);
+        int attempt = 0;
+        while (segment[0] + segment[2] < segment[1]) {
+            attempt++;
+            long position = segment[0] + segment[2];
+            URLConnection connection = url.openConnection();
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setRequestProperty("Range", "bytes=" + position + "-" + (segment[1] - 1));
+            if (validator != null) {
+                /*
+                 * If the file changed the server sends all of it with a 200
+                 * instead, which fails the check below, so ranges of
+                 * different versions are never stitched together.
+                 */
+                connection.setRequestProperty("If-Range", validator);
+            }
+            byte[] buffer = bufferPool.acquire();
+            try ( InputStream input = connection.getInputStream()) {
+                if (((HttpURLConnection) connection).getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                    throw new IOException("Range request not honored for " + url
+                            + ", the file may have changed");
+                }
+                long saved = segment[2];
+                int read;
+                while (position < segment[1] && (read = input.read(buffer,
+                        0, (int) Math.min(buffer.length, segment[1] - position))) != -1) {
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                    while (byteBuffer.hasRemaining()) {
+                        position += channel.write(byteBuffer, position);
+                    }
+                    segment[2] = position - segment[0];
+                    if (segment[2] - saved >= PROGRESS_INTERVAL) {
+                        partsChannel.write(progress.clear().putLong(0, segment[2]), progressPosition);
+                        saved = segment[2];
+                    }
+                }
+                partsChannel.write(progress.clear().putLong(0, segment[2]), progressPosition);
+                if (position < segment[1]) {
+                    throw new EOFException("Premature end of range " + position + "-" + segment[1]);
+                }
+            } catch (IOException ioe) {
+                if (attempt == ATTEMPTS) {
+                    throw ioe;
+                }
+            } finally {
+                bufferPool.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Get the position of the progress of the given segment in the parts
+     * file.
+     *
+     * @param validator the validator.
+     * @param index the segment index.
+     * @return the position.
+     */
+    private long getProgressPosition(String validator, int index) {
+        return Long.BYTES + 2 + validator.getBytes(StandardCharsets.UTF_8).length
+                + Integer.BYTES + index * 3L * Long.BYTES + 2 * Long.BYTES;
+    }
+
+    /**
+     * Read the progress of an earlier download.
+     *
+     * @param length the length of the file.
+     * @param validator the validator of the file.
+     * @return the segments, or null if there is no (usable) earlier progress.
+     * @throws IOException when an I/O error occurs.
+     */
+    private long[][] readProgress(long length, String validator) throws IOException {
+        if (!partsFile.exists() || file.length() != length) {
+            return null;
+        }
+        try ( RandomAccessFile input = new RandomAccessFile(partsFile, "r")) {
+            if (input.readLong() != length || !input.readUTF().equals(validator)) {
+                return null;
+            }
+            long[][] segments = new long[input.readInt()][3];
+            for (long[] segment : segments) {
+                segment[0] = input.readLong();
+                segment[1] = input.readLong();
+                segment[2] = input.readLong();
+            }
+            return segments;
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the progress.
+     *
+     * @param length the length of the file.
+     * @param validator the validator of the file.
+     * @param segments the segments.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void writeProgress(long length, String validator, long[][] segments) throws IOException {
+        try ( RandomAccessFile output = new RandomAccessFile(partsFile, "rw")) {
+            output.setLength(0);
+            output.writeLong(length);
+            output.writeUTF(validator);
+            output.writeInt(segments.length);
+            for (long[] segment : segments) {
+                output.writeLong(segment[0]);
+                output.writeLong(segment[1]);
+                output.writeLong(segment[2]);
+            }
+        }
+    }
+}
@@ -0,0 +1,655 @@
+/*
+ * Copyright (c) 2002-2023 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.manorrock.mammoth;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * The binary catalog of the central directory of the TCK zip file.
+ *
+ * <p>
+ * The catalog is stored next to the TCK zip file (with a
+ * <code>.catalog</code> suffix) and is memory-mapped when opened. It is
+ * rebuilt when the length or the last modified time of the TCK zip file no
+ * longer match the ones recorded in it.
+ * </p>
+ *
+ * <p>
+ * Each record stores the offset of the local header of the entry, so an
+ * entry can be read straight from the TCK zip file without parsing its
+ * central directory again.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class TckCatalog {
+
+    /**
+     * The kind of an entry.
+     */
+    enum Kind {
+        /**
+         * A directory.
+         */
+        DIRECTORY,
+        /**
+         * A WAR file.
+         */
+        WAR,
+        /**
+         * A jar file in the lib directory.
+         */
+        LIB_JAR,
+        /**
+         * Anything else.
+         */
+        OTHER
+    }
+
+    /**
+     * Stores the kinds by ordinal.
+     */
+    private static final Kind[] KINDS = Kind.values();
+
+    /**
+     * Stores the magic number of the catalog file.
+     */
+    private static final int MAGIC = 0x4d4d4354;
+
+    /**
+     * Stores the version of the catalog format.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Stores the size of the catalog header.
+     */
+    private static final int HEADER_SIZE = 28;
+
+    /**
+     * Stores the size of a record without its name.
+     */
+    private static final int RECORD_SIZE = 45;
+
+    /**
+     * Stores the value of the modification time of a record without one.
+     */
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    /**
+     * Stores the mapped catalog.
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Stores the position of each record in the mapped catalog.
+     */
+    private final int[] positions;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer the mapped catalog.
+     */
+    private TckCatalog(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.positions = new int[buffer.getInt(24)];
+        int position = HEADER_SIZE;
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = position;
+            position += RECORD_SIZE + Short.toUnsignedInt(buffer.getShort(position + RECORD_SIZE - 2));
+        }
+    }
+
+    /**
+     * Open the catalog for the given zip file, (re)building it if needed.
+     *
+     * @param zipFile the zip file.
+     * @return the catalog.
+     * @throws IOException when an I/O error occurs.
+     */
+    static TckCatalog open(File zipFile) throws IOException {
+        File catalogFile = new File(zipFile.getPath() + ".catalog");
+        MappedByteBuffer buffer = map(catalogFile);
+        if (buffer == null
+                || buffer.getLong(8) != zipFile.length()
+                || buffer.getLong(16) != zipFile.lastModified()) {
+            write(zipFile, catalogFile);
+            buffer = map(catalogFile);
+            if (buffer == null) {
+                throw new IOException("Unable to read catalog: " + catalogFile);
+            }
+        }
+        return new TckCatalog(buffer);
+    }
+
+    /**
+     * Map the given catalog file.
+     *
+     * @param catalogFile the catalog file.
+     * @return the mapped catalog, or null if it does not exist, is not a
+     * catalog of the current version or is incomplete.
+     * @throws IOException when an I/O error occurs.
+     */
+    private static MappedByteBuffer map(File catalogFile) throws IOException {
+        if (!catalogFile.isFile() || catalogFile.length() < HEADER_SIZE) {
+            return null;
+        }
+        try ( FileChannel channel = FileChannel.open(catalogFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || !isComplete(buffer)) {
+                return null;
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Are all the records of the mapped catalog within its size.
+     *
+     * @param buffer the mapped catalog.
+     * @return true if they are, false otherwise.
+     */
+    private static boolean isComplete(MappedByteBuffer buffer) {
+        int count = buffer.getInt(24);
+        if (count < 0) {
+            return false;
+        }
+        long position = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            if (position + RECORD_SIZE > buffer.limit()) {
+                return false;
+            }
+            position += RECORD_SIZE + Short.toUnsignedInt(buffer.getShort((int) position + RECORD_SIZE - 2));
+        }
+        return position == buffer.limit();
+    }
+
+    /**
+     * Write the catalog for the given zip file.
+     *
+     * @param zipFile the zip file.
+     * @param catalogFile the catalog file.
+     * @throws IOException when an I/O error occurs.
+     */
+    private static void write(File zipFile, File catalogFile) throws IOException {
+        try ( FileChannel zipChannel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ)) {
+            long[] directory = findCentralDirectory(zipChannel);
+            if (directory[1] > Integer.MAX_VALUE) {
+                throw new ZipException("Central directory too large: " + zipFile);
+            }
+            ByteBuffer input = zipChannel
+                    .map(FileChannel.MapMode.READ_ONLY, directory[2], directory[1])
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer output = ByteBuffer.allocate(HEADER_SIZE + input.capacity());
+            output.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(zipFile.length())
+                    .putLong(zipFile.lastModified())
+                    .putInt((int) directory[0]);
+            int position = 0;
+            for (long i = 0; i < directory[0]; i++) {
+                if (input.getInt(position) != 0x02014b50) {
+                    throw new ZipException("Invalid central directory header: " + zipFile);
+                }
+                short method = input.getShort(position + 10);
+                int dosTime = input.getInt(position + 12);
+                long crc = Integer.toUnsignedLong(input.getInt(position + 16));
+                long compressedSize = Integer.toUnsignedLong(input.getInt(position + 20));
+                long size = Integer.toUnsignedLong(input.getInt(position + 24));
+                int nameLength = Short.toUnsignedInt(input.getShort(position + 28));
+                int extraLength = Short.toUnsignedInt(input.getShort(position + 30));
+                int commentLength = Short.toUnsignedInt(input.getShort(position + 32));
+                long offset = Integer.toUnsignedLong(input.getInt(position + 42));
+                long time = NO_TIME;
+                byte[] name = new byte[nameLength];
+                input.get(position + 46, name);
+                /*
+                 * Sizes and offset that do not fit in 32 bits are stored in
+                 * the ZIP64 extra field, in this order. A modification time
+                 * in the extended timestamp or NTFS extra field takes
+                 * precedence over the DOS time, like it does for ZipEntry.
+                 */
+                int extra = position + 46 + nameLength;
+                int extraEnd = extra + extraLength;
+                while (extra + 4 <= extraEnd) {
+                    int id = Short.toUnsignedInt(input.getShort(extra));
+                    int length = Short.toUnsignedInt(input.getShort(extra + 2));
+                    if (id == 0x0001) {
+                        int value = extra + 4;
+                        if (size == 0xFFFFFFFFL) {
+                            size = input.getLong(value);
+                            value += 8;
+                        }
+                        if (compressedSize == 0xFFFFFFFFL) {
+                            compressedSize = input.getLong(value);
+                            value += 8;
+                        }
+                        if (offset == 0xFFFFFFFFL) {
+                            offset = input.getLong(value);
+                        }
+                    } else if (id == 0x5455 && length >= 5 && (input.get(extra + 4) & 0x1) != 0) {
+                        time = input.getInt(extra + 5) * 1000L;
+                    } else if (id == 0x000a && length >= 32
+                            && input.getShort(extra + 8) == 0x0001 && input.getShort(extra + 10) == 24
+                            && input.getLong(extra + 12) != Long.MIN_VALUE) {
+                        time = Math.floorDiv(input.getLong(extra + 12) / 10 - 11644473600000000L, 1000L);
+                    }
+                    extra += 4 + length;
+                }
+                output.put((byte) getKind(new String(name, StandardCharsets.UTF_8)).ordinal())
+                        .putShort(method)
+                        .putInt((int) crc)
+                        .putLong(compressedSize)
+                        .putLong(size)
+                        .putLong(offset)
+                        .putInt(dosTime)
+                        .putLong(time)
+                        .putShort((short) nameLength)
+                        .put(name);
+                position = extraEnd + commentLength;
+            }
+            output.flip();
+            /*
+             * Write to a temporary file and move it into place, so an
+             * interrupted write never leaves a partial catalog behind.
+             */
+            Path tempFile = Files.createTempFile(catalogFile.getAbsoluteFile().getParentFile().toPath(),
+                    catalogFile.getName(), ".tmp");
+            try {
+                try ( FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                    while (output.hasRemaining()) {
+                        channel.write(output);
+                    }
+                }
+                Files.move(tempFile, catalogFile.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    /**
+     * Find the central directory of the zip file.
+     *
+     * @param channel the zip file channel.
+     * @return the number of entries, the size and the offset of the central
+     * directory.
+     * @throws IOException when an I/O error occurs.
+     */
+    private static long[] findCentralDirectory(FileChannel channel) throws IOException {
+        long length = channel.size();
+        int tailLength = (int) Math.min(length, 0xFFFF + 22 + 20);
+        long tailStart = length - tailLength;
+        ByteBuffer tail = channel
+                .map(FileChannel.MapMode.READ_ONLY, tailStart, tailLength)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int position = tailLength - 22; position >= 0; position--) {
+            if (tail.getInt(position) == 0x06054b50) {
+                long entries = Short.toUnsignedInt(tail.getShort(position + 10));
+                long size = Integer.toUnsignedLong(tail.getInt(position + 12));
+                long offset = Integer.toUnsignedLong(tail.getInt(position + 16));
+                if (position >= 20 && tail.getInt(position - 20) == 0x07064b50) {
+                    ByteBuffer zip64 = ByteBuffer.allocate(56).order(ByteOrder.LITTLE_ENDIAN);
+                    channel.read(zip64, tail.getLong(position - 12));
+                    if (zip64.getInt(0) == 0x06064b50) {
+                        entries = zip64.getLong(32);
+                        size = zip64.getLong(40);
+                        offset = zip64.getLong(48);
+                    }
+                }
+                return new long[]{entries, size, offset};
+            }
+        }
+        throw new ZipException("No end of central directory record found");
+    }
+
+    /**
+     * Get the kind for the given entry name.
+     *
+     * @param name the entry name.
+     * @return the kind.
+     */
+    private static Kind getKind(String name) {
+        String path = name.substring(name.indexOf('/') + 1);
+        String lowerCasePath = path.toLowerCase();
+        if (name.endsWith("/")) {
+            return Kind.DIRECTORY;
+        } else if (lowerCasePath.endsWith(".war")) {
+            return Kind.WAR;
+        } else if (path.startsWith("lib/") && lowerCasePath.endsWith(".jar")) {
+            return Kind.LIB_JAR;
+        }
+        return Kind.OTHER;
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return the number of entries.
+     */
+    int size() {
+        return positions.length;
+    }
+
+    /**
+     * Get the name of the given entry.
+     *
+     * @param index the entry index.
+     * @return the name.
+     */
+    String getName(int index) {
+        byte[] name = new byte[Short.toUnsignedInt(buffer.getShort(positions[index] + RECORD_SIZE - 2))];
+        buffer.get(positions[index] + RECORD_SIZE, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Is the given entry a directory.
+     *
+     * @param index the entry index.
+     * @return true if it is, false otherwise.
+     */
+    boolean isDirectory(int index) {
+        return buffer.get(positions[index]) == Kind.DIRECTORY.ordinal();
+    }
+
+    /**
+     * Get the modification time of the given entry.
+     *
+     * @param index the entry index.
+     * @return the modification time in milliseconds since the epoch.
+     * @see ZipEntry#getTime()
+     */
+    long getTime(int index) {
+        long time = buffer.getLong(positions[index] + 35);
+        if (time != NO_TIME) {
+            return time;
+        }
+        LocalDateTime localTime = getDosTime(index);
+        return localTime.toEpochSecond(ZoneId.systemDefault().getRules().getOffset(localTime)) * 1000L;
+    }
+
+    /**
+     * Get the modification time of the given entry in the local time zone.
+     *
+     * @param index the entry index.
+     * @return the modification time.
+     * @see ZipEntry#getTimeLocal()
+     */
+    LocalDateTime getTimeLocal(int index) {
+        long time = buffer.getLong(positions[index] + 35);
+        if (time != NO_TIME) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        }
+        return getDosTime(index);
+    }
+
+    /**
+     * Get the DOS time of the given entry.
+     *
+     * @param index the entry index.
+     * @return the DOS time.
+     */
+    private LocalDateTime getDosTime(int index) {
+        int dosTime = buffer.getInt(positions[index] + 31);
+        /*
+         * Out of range fields (e.g. a zero date) roll over, the same way
+         * ZipEntry handles them.
+         */
+        return LocalDateTime.of(((dosTime >> 25) & 0x7f) + 1980, 1, 1, 0, 0)
+                .plusMonths(((dosTime >> 21) & 0x0f) - 1)
+                .plusDays(((dosTime >> 16) & 0x1f) - 1)
+                .plusHours((dosTime >> 11) & 0x1f)
+                .plusMinutes((dosTime >> 5) & 0x3f)
+                .plusSeconds((dosTime << 1) & 0x3e);
+    }
+
+    /**
+     * Get an input stream for the content of the given entry.
+     *
+     * <p>
+     * The content is read from the offset stored in the catalog and its size
+     * and CRC-32 are checked against the catalog once it is read completely.
+     * </p>
+     *
+     * @param channel the channel of the zip file.
+     * @param inflater the inflater to use for deflated entries.
+     * @param index the entry index.
+     * @return the input stream.
+     * @throws IOException when an I/O error occurs.
+     */
+    InputStream getInputStream(FileChannel channel, Inflater inflater, int index) throws IOException {
+        int position = positions[index];
+        int method = Short.toUnsignedInt(buffer.getShort(position + 1));
+        long compressedSize = buffer.getLong(position + 7);
+        long offset = buffer.getLong(position + 23);
+        ByteBuffer header = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, offset + header.position()) == -1) {
+                throw new EOFException("Unexpected end of zip file: " + getName(index));
+            }
+        }
+        if (header.getInt(0) != 0x04034b50) {
+            throw new ZipException("Invalid local header: " + getName(index));
+        }
+        long dataOffset = offset + 30
+                + Short.toUnsignedInt(header.getShort(26))
+                + Short.toUnsignedInt(header.getShort(28));
+        InputStream input;
+        if (method == ZipEntry.STORED) {
+            input = new ChannelInputStream(channel, dataOffset, compressedSize, false);
+        } else if (method == ZipEntry.DEFLATED) {
+            inflater.reset();
+            input = new InflaterInputStream(
+                    new ChannelInputStream(channel, dataOffset, compressedSize, true),
+                    inflater, (int) Math.min(compressedSize + 1, 64 * 1024));
+        } else {
+            throw new ZipException("Unsupported compression method " + method + ": " + getName(index));
+        }
+        return new CheckedEntryInputStream(input, getName(index),
+                Integer.toUnsignedLong(buffer.getInt(position + 3)), buffer.getLong(position + 15));
+    }
+
+    /**
+     * Get the names of all the entries of the given kind.
+     *
+     * @param kind the kind.
+     * @return the names.
+     */
+    List<String> getNames(Kind kind) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < positions.length; i++) {
+            if (buffer.get(positions[i]) == kind.ordinal()) {
+                names.add(getName(i));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * The input stream for a range of the zip file.
+     */
+    private static class ChannelInputStream extends InputStream {
+
+        /**
+         * Stores the channel.
+         */
+        private final FileChannel channel;
+
+        /**
+         * Stores the position of the next byte.
+         */
+        private long position;
+
+        /**
+         * Stores the number of bytes remaining.
+         */
+        private long remaining;
+
+        /**
+         * Stores whether a trailing dummy byte still needs to be returned.
+         */
+        private boolean dummy;
+
+        /**
+         * Constructor.
+         *
+         * @param channel the channel.
+         * @param position the start position.
+         * @param length the length.
+         * @param dummy true to end with a dummy byte, which the inflater
+         * needs for entries written without the trailing zlib bytes.
+         */
+        ChannelInputStream(FileChannel channel, long position, long length, boolean dummy) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+            this.dummy = dummy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : Byte.toUnsignedInt(b[0]);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                if (dummy) {
+                    dummy = false;
+                    b[off] = 0;
+                    return 1;
+                }
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of zip file");
+            }
+            position += read;
+            remaining -= read;
+            return read;
+        }
+    }
+
+    /**
+     * The input stream that checks the size and CRC-32 of an entry once it
+     * is read completely.
+     */
+    private static class CheckedEntryInputStream extends FilterInputStream {
+
+        /**
+         * Stores the CRC-32 of what was read.
+         */
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * Stores the expected CRC-32.
+         */
+        private final long expectedCrc;
+
+        /**
+         * Stores the expected size.
+         */
+        private final long expectedSize;
+
+        /**
+         * Stores the entry name.
+         */
+        private final String name;
+
+        /**
+         * Stores the number of bytes read.
+         */
+        private long size;
+
+        /**
+         * Constructor.
+         *
+         * @param input the input stream.
+         * @param name the entry name.
+         * @param expectedCrc the expected CRC-32.
+         * @param expectedSize the expected size.
+         */
+        CheckedEntryInputStream(InputStream input, String name, long expectedCrc, long expectedSize) {
+            super(input);
+            this.name = name;
+            this.expectedCrc = expectedCrc;
+            this.expectedSize = expectedSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : Byte.toUnsignedInt(b[0]);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read == -1) {
+                if (size != expectedSize || crc.getValue() != expectedCrc) {
+                    throw new ZipException("Invalid entry size or CRC-32: " + name);
+                }
+                return -1;
+            }
+            crc.update(b, off, read);
+            size += read;
+            return read;
+        }
+    }
+}
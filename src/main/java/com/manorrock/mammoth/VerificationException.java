@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2002-2023 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.manorrock.mammoth;
+
+import java.util.List;
+
+/**
+ * The exception reported when a generated module does not compile.
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+public class VerificationException extends Exception {
+
+    /**
+     * Stores the serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Stores the compile errors.
+     */
+    private final List<String> compileErrors;
+
+    /**
+     * Stores the module name.
+     */
+    private final String module;
+
+    /**
+     * Constructor.
+     *
+     * @param module the module name.
+     * @param compileErrors the compile errors.
+     */
+    public VerificationException(String module, List<String> compileErrors) {
+        super("Module " + module + " has " + compileErrors.size() + " compile error(s)");
+        this.module = module;
+        this.compileErrors = List.copyOf(compileErrors);
+    }
+
+    /**
+     * Get the compile errors.
+     *
+     * @return the compile errors.
+     */
+    public List<String> getCompileErrors() {
+        return compileErrors;
+    }
+
+    /**
+     * Get the module name.
+     *
+     * @return the module name.
+     */
+    public String getModule() {
+        return module;
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2002-2023 Manorrock.com. All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   1. Redistributions of source code must retain the above copyright notice,
+ *      this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.manorrock.mammoth;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The JUnit tests for the RangedDownloader class.
+ *
+ * <p>
+ * A <code>com.sun.net.httpserver</code> stand-in serves a fixture TCK zip
+ * and the downloaded file is compared with it byte for byte.
+ * </p>
+ *
+ * @author Manfred Riem (mriem@manorrock.com)
+ */
+class RangedDownloaderTest {
+
+    /**
+     * Stores the size of the data entry of the fixture.
+     */
+    private static final int DATA_SIZE = 6 * 1024 * 1024;
+
+    /**
+     * Stores the number of bytes a cut response sends.
+     */
+    private static final int CUT_AFTER = 256 * 1024;
+
+    /**
+     * Stores the original fixture.
+     */
+    private static byte[] original;
+
+    /**
+     * Stores the changed fixture.
+     */
+    private static byte[] changed;
+
+    /**
+     * Stores the stand-in server.
+     */
+    private static HttpServer server;
+
+    /**
+     * Stores the URL of the fixture.
+     */
+    private static URL url;
+
+    /**
+     * Stores the content served.
+     */
+    private static volatile byte[] content;
+
+    /**
+     * Stores the ETag served, or null for none.
+     */
+    private static volatile String etag;
+
+    /**
+     * Stores whether range requests are supported.
+     */
+    private static volatile boolean ranges;
+
+    /**
+     * Stores whether responses are cut short.
+     */
+    private static volatile boolean cut;
+
+    /**
+     * Stores the content to switch to on the next segment request, or null.
+     */
+    private static volatile byte[] nextContent;
+
+    /**
+     * Stores the ETag to switch to on the next segment request.
+     */
+    private static volatile String nextEtag;
+
+    /**
+     * Stores the number of body bytes served, without the probes.
+     */
+    private static final AtomicLong served = new AtomicLong();
+
+    /**
+     * Stores the temporary directory.
+     */
+    @TempDir
+    Path directory;
+
+    /**
+     * Create the fixtures and start the stand-in server.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @BeforeAll
+    static void setUpClass() throws Exception {
+        original = createFixture(1);
+        changed = createFixture(2);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/tck.zip", RangedDownloaderTest::handle);
+        server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/tck.zip");
+    }
+
+    /**
+     * Stop the stand-in server.
+     */
+    @AfterAll
+    static void tearDownClass() {
+        server.stop(0);
+    }
+
+    /**
+     * Test a server with range support.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testRangeSupport() throws Exception {
+        serve(original, "\"v1\"", true, false);
+        download();
+        assertDownloaded(original, 0, original.length);
+    }
+
+    /**
+     * Test a server without range support.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testNoRangeSupport() throws Exception {
+        serve(original, "\"v1\"", false, false);
+        download();
+        assertDownloaded(original, 0, original.length);
+    }
+
+    /**
+     * Test a server that cuts every segment short, followed by a resumed
+     * download that only fetches what is missing.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testCutAndResume() throws Exception {
+        serve(original, "\"v1\"", true, true);
+        assertThrows(IOException.class, this::download);
+        serve(original, "\"v1\"", true, false);
+        download();
+        assertDownloaded(original, 0, original.length - 1);
+    }
+
+    /**
+     * Test a file that changes between the cut and the resume, which must
+     * be downloaded again completely.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testChangedBeforeResume() throws Exception {
+        serve(original, "\"v1\"", true, true);
+        assertThrows(IOException.class, this::download);
+        serve(changed, "\"v2\"", true, false);
+        download();
+        assertDownloaded(changed, changed.length, changed.length);
+    }
+
+    /**
+     * Test a file that changes between the probe and the segment requests,
+     * which must fail rather than mix the two versions.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testChangedWhileRunning() throws Exception {
+        serve(original, "\"v1\"", true, false);
+        nextContent = changed;
+        nextEtag = "\"v2\"";
+        assertThrows(IOException.class, this::download);
+        serve(changed, "\"v2\"", true, false);
+        download();
+        assertDownloaded(changed, changed.length, changed.length);
+    }
+
+    /**
+     * Test a server that sends no validator, so a cut download cannot be
+     * resumed safely and is downloaded again completely.
+     *
+     * @throws Exception when a serious error occurs.
+     */
+    @Test
+    void testNoValidator() throws Exception {
+        serve(original, null, true, true);
+        assertThrows(IOException.class, this::download);
+        serve(original, null, true, false);
+        download();
+        assertDownloaded(original, original.length, original.length);
+    }
+
+    /**
+     * Set what the stand-in serves.
+     *
+     * @param content the content.
+     * @param etag the ETag, or null for none.
+     * @param ranges whether range requests are supported.
+     * @param cut whether responses are cut short.
+     */
+    private static void serve(byte[] content, String etag, boolean ranges, boolean cut) {
+        RangedDownloaderTest.content = content;
+        RangedDownloaderTest.etag = etag;
+        RangedDownloaderTest.ranges = ranges;
+        RangedDownloaderTest.cut = cut;
+        nextContent = null;
+        served.set(0);
+    }
+
+    /**
+     * Download the fixture into the temporary directory.
+     *
+     * @throws IOException when an I/O error occurs.
+     */
+    private void download() throws IOException {
+        new RangedDownloader(url, directory.resolve("tck.zip").toFile(), 4,
+                new BufferPool(BufferPool.DEFAULT_BUFFER_SIZE)).download();
+    }
+
+    /**
+     * Assert the download ended up with the expected content.
+     *
+     * @param expected the expected content.
+     * @param minServed the minimum number of body bytes the last download
+     * must have been served.
+     * @param maxServed the maximum number of body bytes the last download may
+     * have been served.
+     * @throws IOException when an I/O error occurs.
+     */
+    private void assertDownloaded(byte[] expected, long minServed, long maxServed) throws IOException {
+        assertArrayEquals(expected, Files.readAllBytes(directory.resolve("tck.zip")));
+        assertFalse(Files.exists(directory.resolve("tck.zip.parts")), "parts file left behind");
+        assertTrue(served.get() >= minServed && served.get() <= maxServed,
+                "served " + served.get() + " bytes, expected " + minServed + " to " + maxServed);
+    }
+
+    /**
+     * Handle a request.
+     *
+     * @param exchange the exchange.
+     * @throws IOException when an I/O error occurs.
+     */
+    private static void handle(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        byte[] body;
+        String etag;
+        synchronized (RangedDownloaderTest.class) {
+            if (nextContent != null && !"bytes=0-0".equals(range)) {
+                content = nextContent;
+                RangedDownloaderTest.etag = nextEtag;
+                nextContent = null;
+            }
+            body = content;
+            etag = RangedDownloaderTest.etag;
+        }
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        int start = 0;
+        int end = body.length - 1;
+        boolean partial = ranges && range != null && range.startsWith("bytes=")
+                && (ifRange == null || ifRange.equals(etag));
+        if (partial) {
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            start = Integer.parseInt(bounds[0]);
+            end = bounds.length > 1 ? Math.min(end, Integer.parseInt(bounds[1])) : end;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        }
+        int length = end - start + 1;
+        boolean probe = partial && length == 1;
+        exchange.sendResponseHeaders(partial ? 206 : 200, length);
+        int written = cut && !probe ? Math.min(length, CUT_AFTER) : length;
+        OutputStream output = exchange.getResponseBody();
+        output.write(body, start, written);
+        output.flush();
+        if (!probe) {
+            served.addAndGet(written);
+        }
+        if (written < length) {
+            /*
+             * Throwing from the handler makes the server drop the
+             * connection in the middle of the response.
+             */
+            throw new IOException("Cut short");
+        }
+        output.close();
+    }
+
+    /**
+     * Create a fixture TCK zip file.
+     *
+     * @param seed the seed of the data entry.
+     * @return the zip file content.
+     * @throws IOException when an I/O error occurs.
+     */
+    private static byte[] createFixture(long seed) throws IOException {
+        byte[] data = new byte[DATA_SIZE];
+        new Random(seed).nextBytes(data);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try ( ZipOutputStream output = new ZipOutputStream(bytes)) {
+            ZipEntry entry = new ZipEntry("tck/data.bin");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(data.length);
+            entry.setCrc(crc.getValue());
+            output.putNextEntry(entry);
+            output.write(data);
+            output.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+}